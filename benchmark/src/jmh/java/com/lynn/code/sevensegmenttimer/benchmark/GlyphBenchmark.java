@@ -0,0 +1,65 @@
+package com.lynn.code.sevensegmenttimer.benchmark;
+
+import com.lynn.code.sevensegmenttimer.Glyph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 字形查表, 模拟 onDraw 中每个灯管的判断
+ */
+@State(Scope.Thread)
+public class GlyphBenchmark {
+    private static final int SIZE = 1024;
+    //固定种子, 每次运行的输入相同
+    private static final long SEED = 20160810L;
+
+    private int[] mCodes;
+    private char[] mChars;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(SEED);
+        mCodes = new int[SIZE];
+        mChars = new char[SIZE];
+        final String chars = "0123456789AbCdEF-HLPUrno ";
+        for (int i = 0; i < SIZE; i++) {
+            //包含少量越界的编码
+            mCodes[i] = random.nextInt(Glyph.COUNT + 2) - 1;
+            mChars[i] = chars.charAt(random.nextInt(chars.length()));
+        }
+    }
+
+    /**
+     * 每个字形 7 个灯管的判断
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int segmentsOfGlyph() {
+        int lit = 0;
+        for (int i = 0; i < SIZE; i++) {
+            final int mask = Glyph.mask(mCodes[i]);
+            for (int segment = 0; segment < Glyph.SEGMENT_COUNT; segment++) {
+                if (Glyph.isOn(mask, segment)) {
+                    lit++;
+                }
+            }
+        }
+        return lit;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int fromChar() {
+        int sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += Glyph.fromChar(mChars[i]);
+        }
+        return sum;
+    }
+}
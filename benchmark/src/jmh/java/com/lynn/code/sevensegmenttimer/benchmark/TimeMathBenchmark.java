@@ -0,0 +1,92 @@
+package com.lynn.code.sevensegmenttimer.benchmark;
+
+import com.lynn.code.sevensegmenttimer.TimeFields;
+import com.lynn.code.sevensegmenttimer.TimeMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 每次唤醒时的时间运算: 分解时分秒, 按精度取整, 计算下一次唤醒
+ */
+@State(Scope.Thread)
+public class TimeMathBenchmark {
+    private static final int SIZE = 1024;
+    //固定种子, 每次运行的输入相同
+    private static final long SEED = 20160811L;
+    //最多 100 小时
+    private static final long MAX_MILLIS = 100 * TimeMath.HOUR_MILLIS;
+
+    private long[] mValues;
+    private final int[] mFields = new int[3];
+    private final TimeFields mTimeFields = new TimeFields();
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(SEED);
+        mValues = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            mValues[i] = (long) (random.nextDouble() * MAX_MILLIS);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int divide() {
+        int sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            TimeMath.divide(mValues[i], 99, mFields);
+            sum += mFields[TimeMath.HOUR] + mFields[TimeMath.MINUTE] + mFields[TimeMath.SECOND];
+        }
+        return sum;
+    }
+
+    /**
+     * 分解为 天 时 分 秒 毫秒
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long split() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            TimeMath.split(mValues[i], mTimeFields);
+            sum += mTimeFields.days + mTimeFields.hours + mTimeFields.minutes + mTimeFields.seconds;
+        }
+        return sum;
+    }
+
+    /**
+     * 倒计时一次唤醒的全部运算, 按秒显示
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long countDownTick() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            final long value = mValues[i];
+            final long shown = TimeMath.roundForDisplay(value, TimeMath.SECOND_MILLIS, true);
+            TimeMath.divide(shown, 99, mFields);
+            sum += TimeMath.nextChangeDelay(value, TimeMath.SECOND_MILLIS, true) + mFields[TimeMath.SECOND];
+        }
+        return sum;
+    }
+
+    /**
+     * 正计时逐帧刷新, 按百分之一秒显示
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long countUpFrame() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            final long value = mValues[i];
+            sum += TimeMath.roundForDisplay(value, 10, false) + TimeMath.nextChangeDelay(value, 10, false);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,77 @@
+package com.lynn.code.sevensegmenttimer.benchmark;
+
+import com.lynn.code.sevensegmenttimer.TimeMath;
+import com.lynn.code.sevensegmenttimer.TimingWheel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 几千个倒计时的 结束 和 剩余时间 提醒: 添加 / 取消, 以及一次唤醒取出到期的一批
+ */
+@State(Scope.Thread)
+public class TimingWheelBenchmark {
+    private static final int SIZE = 4096;
+    private static final long SEED = 20160811L;
+    private static final long TICK = 10;
+    //最多 2 天
+    private static final long MAX_MILLIS = 2 * TimeMath.DAY_MILLIS;
+
+    private long[] mDeadlines;
+    private TimingWheel.Timeout<Integer>[] mTimeouts;
+    private final Integer mValue = 1;
+
+    @Setup
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setUp() {
+        final Random random = new Random(SEED);
+        mDeadlines = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            mDeadlines[i] = (long) (random.nextDouble() * MAX_MILLIS);
+        }
+        mTimeouts = new TimingWheel.Timeout[SIZE];
+    }
+
+    /**
+     * 添加后全部取消, 例如列表刷新时重新设置所有提醒
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int scheduleAndCancel() {
+        final TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 0);
+        for (int i = 0; i < SIZE; i++) {
+            mTimeouts[i] = wheel.schedule(mDeadlines[i], mValue);
+        }
+        for (int i = 0; i < SIZE; i++) {
+            wheel.cancel(mTimeouts[i]);
+        }
+        return wheel.size();
+    }
+
+    /**
+     * 添加后按 1秒 推进直到全部到期, 包括跨层的重新分配
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int scheduleAndExpire() {
+        final TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 0);
+        for (int i = 0; i < SIZE; i++) {
+            wheel.schedule(mDeadlines[i], mValue);
+        }
+        int expired = 0;
+        long now = 0;
+        while (wheel.size() > 0) {
+            now = Math.max(now + TimeMath.SECOND_MILLIS, wheel.nextDeadline());
+            wheel.advance(now);
+            while (wheel.poll() != null) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+}
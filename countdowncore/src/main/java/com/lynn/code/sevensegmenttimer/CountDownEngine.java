@@ -0,0 +1,238 @@
+package com.lynn.code.sevensegmenttimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不依赖 Android 的计时状态
+ * <p>
+ * 保存 倒计时的截止时刻 或 正计时的开始时刻, 当前时间每次都从时钟重新计算, 不逐秒递减,
+ * 被延迟的刷新不会累积误差
+ * 时钟可以替换, Android 上使用 SystemClock.elapsedRealtime(), 测试时使用可控的时钟
+ * <p>
+ * 不是线程安全的, 由使用者保证在同一个线程调用
+ */
+
+public final class CountDownEngine {
+    public static final int COUNT_DOWN = 0;
+    public static final int COUNT_UP = 1;
+
+    private final Clock mClock;
+
+    private int mMode;
+    //设置的倒计时长度 millis
+    private long mDuration;
+    //倒计时结束的时刻
+    private long mDeadline;
+    //正计时开始的时刻, 暂停后恢复时会向后平移
+    private long mBase;
+    //是否正在计时, 暂停或结束时为 false
+    private boolean mIsRunning;
+    //暂停时的 剩余时间 或 已用时间
+    private long mPausedValue;
+
+    public CountDownEngine() {
+        this(Clock.SYSTEM);
+    }
+
+    public CountDownEngine(Clock clock) {
+        mClock = clock;
+        mMode = COUNT_DOWN;
+    }
+
+    /**
+     * 切换 倒计时 / 正计时, 切换后停止计时
+     */
+    public void setMode(int mode) {
+        if (mode != COUNT_DOWN && mode != COUNT_UP) {
+            throw new IllegalArgumentException("未知的模式 " + mode);
+        }
+        if (mMode == mode) {
+            return;
+        }
+        mMode = mode;
+        reset();
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public boolean isCountDown() {
+        return mMode == COUNT_DOWN;
+    }
+
+    /**
+     * 设置倒计时长度, 小于 0 时按 0 处理, 下一次 {@link #start()} 时生效
+     */
+    public void setDuration(long millis) {
+        mDuration = Math.max(0, millis);
+        if (!mIsRunning && mMode == COUNT_DOWN) {
+            mPausedValue = mDuration;
+        }
+    }
+
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * 开始计时, 倒计时从设置的长度重新开始, 正计时从 0 开始
+     */
+    public void start() {
+        final long now = mClock.millis();
+        if (mMode == COUNT_DOWN) {
+            mDeadline = deadlineAfter(now, mDuration);
+        } else {
+            mBase = now;
+        }
+        mIsRunning = true;
+    }
+
+    /**
+     * 直接按截止时刻开始倒计时, 例如列表中每一项保存自己的截止时刻
+     * 截止时刻已过时显示 0, 长度按当前剩余时间计算
+     *
+     * @param deadline 与时钟同一基准的截止时刻 millis
+     */
+    public void setDeadline(long deadline) {
+        final long now = mClock.millis();
+        mMode = COUNT_DOWN;
+        mDeadline = deadline;
+        mDuration = Math.max(0, deadline - now);
+        mIsRunning = true;
+    }
+
+    /**
+     * 倒计时的截止时刻, 未在倒计时时无意义
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * 暂停, 保留当前的时间
+     */
+    public void pause() {
+        if (!mIsRunning) {
+            return;
+        }
+        mPausedValue = getValue();
+        mIsRunning = false;
+    }
+
+    /**
+     * 从暂停处继续, 已经走到 0 的倒计时不会继续
+     */
+    public void resume() {
+        if (mIsRunning) {
+            return;
+        }
+        if (mMode == COUNT_DOWN && mPausedValue == 0) {
+            //已结束, 需要重新开始
+            return;
+        }
+        final long now = mClock.millis();
+        if (mMode == COUNT_DOWN) {
+            mDeadline = deadlineAfter(now, mPausedValue);
+        } else {
+            mBase = now - mPausedValue;
+        }
+        mIsRunning = true;
+    }
+
+    /**
+     * 停止并回到初始时间
+     */
+    public void reset() {
+        mIsRunning = false;
+        mPausedValue = mMode == COUNT_UP ? 0 : mDuration;
+    }
+
+    /**
+     * 倒计时结束, 停止并停在 0
+     */
+    public void finish() {
+        mIsRunning = false;
+        mPausedValue = 0;
+    }
+
+    /**
+     * now + remaining, 超出 long 范围时取 Long.MAX_VALUE
+     * 例如 {@link TimeMath#toMillis(long, long, long, long)} 饱和后的长度, 直接相加会变成负数, 倒计时立即结束
+     */
+    private static long deadlineAfter(long now, long remaining) {
+        return remaining > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + remaining;
+    }
+
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /**
+     * 倒计时是否已经走到 0
+     */
+    public boolean isFinished() {
+        return mMode == COUNT_DOWN && getValue() == 0;
+    }
+
+    /**
+     * 倒计时的剩余时间 或 正计时的已用时间 millis
+     */
+    public long getValue() {
+        if (!mIsRunning) {
+            return mPausedValue;
+        }
+        final long now = mClock.millis();
+        return mMode == COUNT_UP ? now - mBase : Math.max(0, mDeadline - now);
+    }
+
+    /**
+     * 当前时间分解后写入调用者提供的对象, 不分配对象
+     *
+     * @return 与 {@link #getValue()} 相同
+     */
+    public long getValue(TimeFields out) {
+        final long value = getValue();
+        TimeMath.split(value, out);
+        return value;
+    }
+
+    /**
+     * 从开始到现在经过的时间, 倒计时为 长度 减去 剩余时间
+     */
+    public long getElapsed() {
+        final long value = getValue();
+        return mMode == COUNT_UP ? value : mDuration - value;
+    }
+
+    /**
+     * 按显示精度取整后的时间, 见 {@link TimeMath#roundForDisplay(long, long, boolean)}
+     */
+    public long getDisplayValue(long resolution) {
+        return TimeMath.roundForDisplay(getValue(), resolution, mMode == COUNT_DOWN);
+    }
+
+    /**
+     * 距离按显示精度取整后的时间下一次变化的毫秒数
+     */
+    public long nextChangeDelay(long resolution) {
+        return TimeMath.nextChangeDelay(getValue(), resolution, mMode == COUNT_DOWN);
+    }
+
+    public interface Clock {
+        /**
+         * 默认使用 System.nanoTime()
+         */
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long millis() {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+            }
+        };
+
+        /**
+         * 单调递增的时间 millis, 起点任意
+         */
+        long millis();
+    }
+}
@@ -0,0 +1,116 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 固定容量的计次记录
+ * <p>
+ * 用 long[] 环形缓冲保存每次计次时的累计时间 (分段时间), 容量满后覆盖最早的记录
+ * 记录和读取都不分配对象, 也不加锁, 只能在主线程使用
+ * 按下标读取单条记录, 不需要复制整个历史
+ */
+
+public final class LapBuffer {
+    private final long[] mSplits;
+    private int mHead;
+    private int mSize;
+    //一共记录过的次数, 包括已被覆盖的
+    private long mTotalCount;
+    //最近被覆盖的那条, 用于计算最早一条的单圈时间
+    private long mEvictedSplit;
+
+    public LapBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0");
+        }
+        mSplits = new long[capacity];
+    }
+
+    /**
+     * 记录一次计次
+     *
+     * @param splitMillis 计次时的累计时间
+     */
+    public void record(long splitMillis) {
+        final int capacity = mSplits.length;
+        final int tail = (mHead + mSize) % capacity;
+        if (mSize == capacity) {
+            //已满, 覆盖最早的
+            mEvictedSplit = mSplits[mHead];
+            mHead = (mHead + 1) % capacity;
+        } else {
+            mSize++;
+        }
+        mSplits[tail] = splitMillis;
+        mTotalCount++;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+        mTotalCount = 0;
+        mEvictedSplit = 0;
+    }
+
+    public int capacity() {
+        return mSplits.length;
+    }
+
+    /**
+     * 当前保存的记录数, 不超过容量
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * 第 index 条保存的记录的累计时间, 0 为保存的最早一条
+     */
+    public long getSplit(int index) {
+        checkIndex(index);
+        return mSplits[(mHead + index) % mSplits.length];
+    }
+
+    /**
+     * 第 index 条保存的记录的单圈时间, 即与上一条的差
+     */
+    public long getLap(int index) {
+        checkIndex(index);
+        final long previous;
+        if (index > 0) {
+            previous = getSplit(index - 1);
+        } else {
+            previous = mTotalCount > mSize ? mEvictedSplit : 0;
+        }
+        return getSplit(index) - previous;
+    }
+
+    /**
+     * 第 index 条保存的记录是总的第几次计次, 从 1 开始
+     */
+    public long getLapNumber(int index) {
+        checkIndex(index);
+        return mTotalCount - mSize + index + 1;
+    }
+
+    /**
+     * 复制一段累计时间到调用者提供的数组
+     *
+     * @return 实际复制的条数
+     */
+    public int copySplits(int from, long[] dst, int dstOffset, int count) {
+        final int available = Math.max(0, Math.min(count, Math.min(mSize - from, dst.length - dstOffset)));
+        for (int i = 0; i < available; i++) {
+            dst[dstOffset + i] = getSplit(from + i);
+        }
+        return available;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 按最小间隔放行周期性的回调
+ * <p>
+ * 按计划的时刻判断, 不按上一次实际放行的时刻: 唤醒会对齐到截止时刻, 一次晚了 δ 下一次就早 δ,
+ * 按实际间隔判断会跳过这一次, 间隔变成两倍
+ * 在计划时刻之前 tolerance 以内到达的也放行, 之后计划时刻按间隔推进, 不累积误差
+ * <p>
+ * 时间的基准由使用者决定, 不是线程安全的
+ */
+
+public final class TickThrottle {
+    private long mInterval;
+    //下一次放行的计划时刻, 还没有放行过时为 -1
+    private long mNextDue = -1;
+
+    public TickThrottle(long intervalMillis) {
+        setInterval(intervalMillis);
+    }
+
+    /**
+     * 修改间隔, 并重新开始计算
+     */
+    public void setInterval(long intervalMillis) {
+        mInterval = Math.max(0, intervalMillis);
+        reset();
+    }
+
+    public long getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * 重新开始计算, 下一次一定放行
+     */
+    public void reset() {
+        mNextDue = -1;
+    }
+
+    /**
+     * @param nowMillis 当前时间
+     * @param tolerance 比计划时刻提前多少以内也放行, 例如显示最小单位的一半
+     * @return 这一次是否放行
+     */
+    public boolean tryAcquire(long nowMillis, long tolerance) {
+        if (mNextDue >= 0 && nowMillis < mNextDue - tolerance) {
+            return false;
+        }
+        if (mNextDue < 0) {
+            mNextDue = nowMillis + mInterval;
+        } else {
+            mNextDue += mInterval;
+            //落后超过一个间隔时 (例如长时间没有唤醒), 从现在重新计算, 不连续补发
+            if (mNextDue <= nowMillis) {
+                mNextDue = nowMillis + mInterval;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 分解后的时间, 由调用者持有并重复使用, 见 {@link TimeMath#split(long, TimeFields)}
+ */
+
+public final class TimeFields {
+    public long days;
+    //0 - 23
+    public int hours;
+    //0 - 59
+    public int minutes;
+    //0 - 59
+    public int seconds;
+    //0 - 999
+    public int millis;
+
+    /**
+     * 不按天进位的小时数, 例如 1天2小时 为 26
+     */
+    public long totalHours() {
+        return days * 24 + hours;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeFields{" + days + "d " + hours + "h " + minutes + "m " + seconds + "s " + millis + "ms}";
+    }
+}
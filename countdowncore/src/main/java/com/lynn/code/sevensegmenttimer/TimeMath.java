@@ -0,0 +1,114 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 计时用到的时间运算
+ * <p>
+ * 不依赖 Android, 可以在 JVM 上测试和做基准测试
+ * 全部使用 long millis, 不会在 int 的约 24.8 天处溢出
+ */
+
+public final class TimeMath {
+    public static final long SECOND_MILLIS = 1000;
+    public static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    public static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    public static final int HOUR = 0;
+    public static final int MINUTE = 1;
+    public static final int SECOND = 2;
+
+    private TimeMath() {
+    }
+
+    /**
+     * 把 天 时 分 秒 换算为 millis, 各部分可以超过进位的范围, 例如 90秒 即 1分30秒
+     * 结果小于 0 时返回 0, 超出 long 范围时返回 Long.MAX_VALUE
+     */
+    public static long toMillis(long days, long hours, long minutes, long seconds) {
+        //先用 double 判断是否溢出
+        final double approx = days * (double) DAY_MILLIS + hours * (double) HOUR_MILLIS
+                + minutes * (double) MINUTE_MILLIS + seconds * (double) SECOND_MILLIS;
+        if (approx >= Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        if (approx <= 0) {
+            return 0;
+        }
+        final long millis = days * DAY_MILLIS + hours * HOUR_MILLIS + minutes * MINUTE_MILLIS + seconds * SECOND_MILLIS;
+        return Math.max(0, millis);
+    }
+
+    /**
+     * 把 millis 分解为 天 时 分 秒 毫秒, 写入调用者提供的对象, 不分配对象
+     * 小于 0 时按 0 处理
+     */
+    public static void split(long millis, TimeFields out) {
+        long rest = Math.max(0, millis);
+        out.days = rest / DAY_MILLIS;
+        rest %= DAY_MILLIS;
+        out.hours = (int) (rest / HOUR_MILLIS);
+        rest %= HOUR_MILLIS;
+        out.minutes = (int) (rest / MINUTE_MILLIS);
+        rest %= MINUTE_MILLIS;
+        out.seconds = (int) (rest / SECOND_MILLIS);
+        out.millis = (int) (rest % SECOND_MILLIS);
+    }
+
+    /**
+     * 按显示精度取整
+     * 倒计时向上取整, 剩余时间归零的那一刻才显示 0; 正计时向下取整
+     * 接近 Long.MAX_VALUE 时向上取整的结果超出范围, 取 Long.MAX_VALUE
+     *
+     * @param resolution 显示的最小单位 millis
+     */
+    public static long roundForDisplay(long value, long resolution, boolean countDown) {
+        if (countDown) {
+            //先除再判断余数, value + resolution - 1 会溢出
+            long quotient = value / resolution;
+            if (value % resolution > 0) {
+                if (quotient >= Long.MAX_VALUE / resolution) {
+                    return Long.MAX_VALUE;
+                }
+                quotient++;
+            }
+            return quotient * resolution;
+        }
+        return value / resolution * resolution;
+    }
+
+    /**
+     * 距离显示的数字下一次跳变的毫秒数, 与 {@link #roundForDisplay(long, long, boolean)} 对应
+     */
+    public static long nextChangeDelay(long value, long resolution, boolean countDown) {
+        if (countDown) {
+            return value - (value - 1) / resolution * resolution;
+        }
+        return resolution - value % resolution;
+    }
+
+    /**
+     * 根据时间millis, 分解成时分秒, 不足一秒的部分舍去
+     * 小时超过 maxHour 时显示为 maxHour:59:59
+     *
+     * @param out 长度至少为 3, 依次写入 时 分 秒, 见 {@link #HOUR} {@link #MINUTE} {@link #SECOND}
+     */
+    public static void divide(long millis, int maxHour, int[] out) {
+        long second = millis / SECOND_MILLIS;
+        long minute = second / 60;
+        //更新剩下的秒
+        second %= 60;
+        long hour = minute / 60;
+        //更新分钟
+        minute %= 60;
+
+        if (hour > maxHour) {
+            hour = maxHour;
+            minute = 59;
+            second = 59;
+        }
+
+        out[HOUR] = (int) hour;
+        out[MINUTE] = (int) minute;
+        out[SECOND] = (int) second;
+    }
+}
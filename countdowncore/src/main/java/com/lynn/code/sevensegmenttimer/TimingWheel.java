@@ -0,0 +1,301 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 分层时间轮, 用于同时管理大量截止时刻
+ * <p>
+ * 共 LEVELS 层, 每层 WHEEL_SIZE 个槽, 第 l 层的一个槽覆盖 WHEEL_SIZE^l 个 tick
+ * 每个槽是一个双向链表, 添加和取消都是 O(1), 与已有的数量无关
+ * 推进时只在跨过上一层的槽边界时, 把那个槽中的项重新分配到下层 (cascade)
+ * 超出最大范围的项先放在最高层, 到时再重新分配
+ * <p>
+ * 截止时刻按 tick 向上取整, 到期的项不会提前, 最多延后一个 tick
+ * 到期的项移到到期链表, 由 {@link #poll()} 依次取出, 可以一次唤醒处理一批
+ * <p>
+ * 时间的基准由使用者决定, 不是线程安全的
+ */
+
+public final class TimingWheel<T> {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    //到期链表的层号
+    private static final int EXPIRED = -1;
+
+    private final long mTickMillis;
+    //每个槽的链表头
+    private final Timeout<T>[][] mSlots;
+    //已到期 等待取出的项
+    private Timeout<T> mExpiredHead;
+    private Timeout<T> mExpiredTail;
+    //已经处理到的 tick
+    private long mTick;
+    private int mSize;
+
+    /**
+     * @param tickMillis 一个 tick 的长度, 决定精度
+     * @param nowMillis  当前时间, 之前的截止时刻直接到期
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tick 必须大于0");
+        }
+        mTickMillis = tickMillis;
+        mSlots = new Timeout[LEVELS][WHEEL_SIZE];
+        //与 advance 相同向下取整, 向上取整时不对齐的起点会使第一个 tick 内的截止时刻提前到期
+        mTick = toFloorTick(nowMillis);
+    }
+
+    /**
+     * 添加一个截止时刻, O(1)
+     *
+     * @return 用于取消的句柄
+     */
+    public Timeout<T> schedule(long deadlineMillis, T value) {
+        final Timeout<T> timeout = new Timeout<>(deadlineMillis, toTick(deadlineMillis), value);
+        insert(timeout);
+        mSize++;
+        return timeout;
+    }
+
+    /**
+     * 取消, O(1), 已到期但未取出的项也可以取消
+     *
+     * @return 是否取消成功, 已经取出或已经取消时为 false
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.mOwner != this) {
+            return false;
+        }
+        unlink(timeout);
+        timeout.mOwner = null;
+        mSize--;
+        return true;
+    }
+
+    /**
+     * 推进到当前时间, 到期的项移到到期链表
+     * 中间没有项的 tick 直接跳过, 长时间没有推进也不会逐个 tick 处理
+     */
+    public void advance(long nowMillis) {
+        final long target = toFloorTick(nowMillis);
+        while (mTick < target) {
+            final long next = nextTick();
+            if (next > target) {
+                mTick = target;
+                return;
+            }
+            //跳过中间空的 tick, 槽中的项位置不受影响
+            mTick = next - 1;
+            step();
+        }
+    }
+
+    /**
+     * 取出一个已到期的项, 没有时返回 null
+     */
+    public Timeout<T> poll() {
+        final Timeout<T> timeout = mExpiredHead;
+        if (timeout == null) {
+            return null;
+        }
+        unlink(timeout);
+        timeout.mOwner = null;
+        mSize--;
+        return timeout;
+    }
+
+    /**
+     * 下一次需要推进的时刻, 即最早可能到期的时间, 已有到期项时为当前 tick 的时刻
+     * 没有任何项时返回 Long.MAX_VALUE
+     */
+    public long nextDeadline() {
+        if (mExpiredHead != null) {
+            return mTick * mTickMillis;
+        }
+        final long next = nextTick();
+        return next == Long.MAX_VALUE ? Long.MAX_VALUE : next * mTickMillis;
+    }
+
+    /**
+     * 未取出的项的数量, 包括已到期的
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getTickMillis() {
+        return mTickMillis;
+    }
+
+    /**
+     * 截止时刻向上取整到 tick, 保证不会提前到期
+     */
+    private long toTick(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        return (millis - 1) / mTickMillis + 1;
+    }
+
+    private long toFloorTick(long millis) {
+        return millis <= 0 ? 0 : millis / mTickMillis;
+    }
+
+    /**
+     * 处理下一个 tick: 先分配跨过边界的上层槽, 再把本层的槽移到到期链表
+     */
+    private void step() {
+        final long tick = ++mTick;
+        for (int level = 1; level < LEVELS; level++) {
+            final int shift = level * WHEEL_BITS;
+            if ((tick & ((1L << shift) - 1)) != 0) {
+                break;
+            }
+            cascade(level, (int) ((tick >>> shift) & WHEEL_MASK));
+        }
+        cascade(0, (int) (tick & WHEEL_MASK));
+    }
+
+    /**
+     * 取出一个槽中的所有项, 重新放入合适的位置
+     */
+    private void cascade(int level, int slot) {
+        Timeout<T> timeout = mSlots[level][slot];
+        mSlots[level][slot] = null;
+        while (timeout != null) {
+            final Timeout<T> next = timeout.mNext;
+            timeout.mPrev = null;
+            timeout.mNext = null;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void insert(Timeout<T> timeout) {
+        timeout.mOwner = this;
+        final long delta = timeout.mTick - mTick;
+        if (delta <= 0) {
+            appendExpired(timeout);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            final int shift = level * WHEEL_BITS;
+            if (delta < 1L << (shift + WHEEL_BITS)) {
+                link(timeout, level, (int) ((timeout.mTick >>> shift) & WHEEL_MASK));
+                return;
+            }
+        }
+        //超出范围, 放在最高层最远的槽, 分配时再重新计算
+        final int shift = (LEVELS - 1) * WHEEL_BITS;
+        link(timeout, LEVELS - 1, (int) (((mTick >>> shift) + WHEEL_MASK) & WHEEL_MASK));
+    }
+
+    /**
+     * 最早一个非空槽被处理的 tick, 没有时为 Long.MAX_VALUE
+     * 第 l 层的槽在它覆盖的第一个 tick 被处理, 每层最多检查 WHEEL_SIZE 个槽
+     */
+    private long nextTick() {
+        long earliest = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            final int shift = level * WHEEL_BITS;
+            final long block = mTick >>> shift;
+            for (int i = 1; i <= WHEEL_SIZE; i++) {
+                if (mSlots[level][(int) ((block + i) & WHEEL_MASK)] != null) {
+                    earliest = Math.min(earliest, (block + i) << shift);
+                    break;
+                }
+            }
+        }
+        return earliest;
+    }
+
+    private void link(Timeout<T> timeout, int level, int slot) {
+        timeout.mLevel = level;
+        timeout.mSlot = slot;
+        final Timeout<T> head = mSlots[level][slot];
+        timeout.mNext = head;
+        if (head != null) {
+            head.mPrev = timeout;
+        }
+        mSlots[level][slot] = timeout;
+    }
+
+    private void appendExpired(Timeout<T> timeout) {
+        timeout.mLevel = EXPIRED;
+        //按到期的顺序取出
+        timeout.mPrev = mExpiredTail;
+        if (mExpiredTail == null) {
+            mExpiredHead = timeout;
+        } else {
+            mExpiredTail.mNext = timeout;
+        }
+        mExpiredTail = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        final Timeout<T> prev = timeout.mPrev;
+        final Timeout<T> next = timeout.mNext;
+        if (timeout.mLevel == EXPIRED) {
+            if (prev == null) {
+                mExpiredHead = next;
+            } else {
+                prev.mNext = next;
+            }
+            if (next == null) {
+                mExpiredTail = prev;
+            } else {
+                next.mPrev = prev;
+            }
+        } else {
+            if (prev == null) {
+                mSlots[timeout.mLevel][timeout.mSlot] = next;
+            } else {
+                prev.mNext = next;
+            }
+            if (next != null) {
+                next.mPrev = prev;
+            }
+        }
+        timeout.mPrev = null;
+        timeout.mNext = null;
+    }
+
+    /**
+     * 时间轮中的一项, 同时是链表节点
+     */
+    public static final class Timeout<T> {
+        private final long mDeadline;
+        private final long mTick;
+        private final T mValue;
+
+        //所在的时间轮, 取出或取消后为 null
+        private TimingWheel<T> mOwner;
+        private int mLevel;
+        private int mSlot;
+        private Timeout<T> mPrev;
+        private Timeout<T> mNext;
+
+        private Timeout(long deadline, long tick, T value) {
+            mDeadline = deadline;
+            mTick = tick;
+            mValue = value;
+        }
+
+        public long getDeadline() {
+            return mDeadline;
+        }
+
+        public T getValue() {
+            return mValue;
+        }
+
+        /**
+         * 是否还在时间轮中, 取出或取消后为 false
+         */
+        public boolean isPending() {
+            return mOwner != null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.lynn.code.sevensegmenttimer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用可控的时钟测试计时状态和时间运算
+ */
+public class CountDownEngineTest {
+    private long mNow;
+    private CountDownEngine mEngine;
+
+    @Before
+    public void setUp() throws Exception {
+        mNow = 1000;
+        mEngine = new CountDownEngine(new CountDownEngine.Clock() {
+            @Override
+            public long millis() {
+                return mNow;
+            }
+        });
+    }
+
+    @Test
+    public void countDown_remainingFollowsClock() throws Exception {
+        mEngine.setDuration(10 * TimeMath.SECOND_MILLIS);
+        mEngine.start();
+        mNow += 2500;
+        assertEquals(7500, mEngine.getValue());
+        //不足一秒向上取整
+        assertEquals(8000, mEngine.getDisplayValue(TimeMath.SECOND_MILLIS));
+        assertEquals(500, mEngine.nextChangeDelay(TimeMath.SECOND_MILLIS));
+
+        mNow += 20 * TimeMath.SECOND_MILLIS;
+        assertEquals(0, mEngine.getValue());
+        assertTrue(mEngine.isFinished());
+    }
+
+    @Test
+    public void setDeadline_startsCountDown() throws Exception {
+        mEngine.setMode(CountDownEngine.COUNT_UP);
+        mEngine.setDeadline(mNow + 3 * TimeMath.SECOND_MILLIS);
+        assertTrue(mEngine.isCountDown());
+        assertTrue(mEngine.isRunning());
+        mNow += TimeMath.SECOND_MILLIS;
+        assertEquals(2 * TimeMath.SECOND_MILLIS, mEngine.getValue());
+        assertEquals(TimeMath.SECOND_MILLIS, mEngine.getElapsed());
+
+        //已过的截止时刻直接为 0
+        mEngine.setDeadline(mNow - 1);
+        assertEquals(0, mEngine.getValue());
+        assertTrue(mEngine.isFinished());
+    }
+
+    @Test
+    public void pauseAndResume_keepValue() throws Exception {
+        mEngine.setDuration(TimeMath.MINUTE_MILLIS);
+        mEngine.start();
+        mNow += 10 * TimeMath.SECOND_MILLIS;
+        mEngine.pause();
+        mNow += TimeMath.HOUR_MILLIS;
+        assertEquals(50 * TimeMath.SECOND_MILLIS, mEngine.getValue());
+        mEngine.resume();
+        mNow += 5 * TimeMath.SECOND_MILLIS;
+        assertEquals(45 * TimeMath.SECOND_MILLIS, mEngine.getValue());
+        assertEquals(15 * TimeMath.SECOND_MILLIS, mEngine.getElapsed());
+    }
+
+    @Test
+    public void resumeAfterFinish_staysFinished() throws Exception {
+        mEngine.setDuration(TimeMath.SECOND_MILLIS);
+        mEngine.start();
+        mNow += 2 * TimeMath.SECOND_MILLIS;
+        mEngine.finish();
+        mEngine.resume();
+        assertFalse(mEngine.isRunning());
+        assertEquals(0, mEngine.getValue());
+
+        //重新开始后可以正常暂停和继续
+        mEngine.start();
+        mEngine.pause();
+        mEngine.resume();
+        assertTrue(mEngine.isRunning());
+    }
+
+    @Test
+    public void countUp_roundsDown() throws Exception {
+        mEngine.setMode(CountDownEngine.COUNT_UP);
+        mEngine.start();
+        mNow += 1999;
+        assertEquals(1000, mEngine.getDisplayValue(TimeMath.SECOND_MILLIS));
+        assertEquals(1, mEngine.nextChangeDelay(TimeMath.SECOND_MILLIS));
+    }
+
+    @Test
+    public void longDuration_doesNotOverflow() throws Exception {
+        //超过 int 能表示的约 24.8 天
+        final long duration = TimeMath.toMillis(30, 0, 0, 0);
+        mEngine.setDuration(duration);
+        mEngine.start();
+        mNow += TimeMath.DAY_MILLIS;
+
+        final TimeFields fields = new TimeFields();
+        mEngine.getValue(fields);
+        assertEquals(29, fields.days);
+        assertEquals(0, fields.hours);
+        assertEquals(29 * 24, fields.totalHours());
+    }
+
+    @Test
+    public void saturatedDuration_doesNotFinishImmediately() throws Exception {
+        mEngine.setDuration(TimeMath.toMillis(Long.MAX_VALUE, 0, 0, 0));
+        mEngine.start();
+        mNow += TimeMath.SECOND_MILLIS;
+        assertFalse(mEngine.isFinished());
+        assertEquals(Long.MAX_VALUE - mNow, mEngine.getValue());
+
+        //暂停后继续同样不溢出
+        mEngine.pause();
+        mEngine.resume();
+        assertTrue(mEngine.getValue() > 0);
+        assertEquals(Long.MAX_VALUE, mEngine.getDeadline());
+    }
+
+    @Test
+    public void roundForDisplay_nearMaxValue_doesNotOverflow() throws Exception {
+        final long second = TimeMath.SECOND_MILLIS;
+        assertEquals(Long.MAX_VALUE, TimeMath.roundForDisplay(Long.MAX_VALUE, second, true));
+        assertEquals(Long.MAX_VALUE / second * second,
+                TimeMath.roundForDisplay(Long.MAX_VALUE / second * second, second, true));
+        assertEquals(Long.MAX_VALUE / second * second, TimeMath.roundForDisplay(Long.MAX_VALUE, second, false));
+        //一般情况不变
+        assertEquals(2 * second, TimeMath.roundForDisplay(second + 1, second, true));
+        assertEquals(0, TimeMath.roundForDisplay(0, second, true));
+    }
+
+    @Test
+    public void toMillis_normalizesOverflowingFields() throws Exception {
+        final TimeFields fields = new TimeFields();
+        TimeMath.split(TimeMath.toMillis(0, 1, 75, 90), fields);
+        assertEquals(2, fields.hours);
+        assertEquals(16, fields.minutes);
+        assertEquals(30, fields.seconds);
+
+        assertEquals(0, TimeMath.toMillis(0, 0, 0, -5));
+        assertEquals(Long.MAX_VALUE, TimeMath.toMillis(Long.MAX_VALUE, 0, 0, 0));
+    }
+
+    @Test
+    public void divide_handlesSixtyBoundaries() throws Exception {
+        final int[] out = new int[3];
+        TimeMath.divide(TimeMath.toMillis(0, 0, 60, 60), 99, out);
+        assertEquals(1, out[TimeMath.HOUR]);
+        assertEquals(1, out[TimeMath.MINUTE]);
+        assertEquals(0, out[TimeMath.SECOND]);
+
+        //超过能显示的小时数时显示全 9
+        TimeMath.divide(TimeMath.toMillis(5, 0, 0, 0), 99, out);
+        assertEquals(99, out[TimeMath.HOUR]);
+        assertEquals(59, out[TimeMath.MINUTE]);
+        assertEquals(59, out[TimeMath.SECOND]);
+    }
+}
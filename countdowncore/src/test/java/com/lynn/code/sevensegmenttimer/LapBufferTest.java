@@ -0,0 +1,117 @@
+package com.lynn.code.sevensegmenttimer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 计次记录的覆盖, 下标换算和复制范围
+ */
+public class LapBufferTest {
+    private static final int CAPACITY = 4;
+
+    private LapBuffer mLaps;
+
+    @Before
+    public void setUp() throws Exception {
+        mLaps = new LapBuffer(CAPACITY);
+    }
+
+    @Test
+    public void notFull_keepsAllInOrder() throws Exception {
+        mLaps.record(1000);
+        mLaps.record(2500);
+        assertEquals(2, mLaps.size());
+        assertEquals(2, mLaps.getTotalCount());
+        assertEquals(1000, mLaps.getSplit(0));
+        assertEquals(2500, mLaps.getSplit(1));
+        //最早一条的单圈时间从 0 开始算
+        assertEquals(1000, mLaps.getLap(0));
+        assertEquals(1500, mLaps.getLap(1));
+        assertEquals(1, mLaps.getLapNumber(0));
+        assertEquals(2, mLaps.getLapNumber(1));
+    }
+
+    @Test
+    public void full_evictsOldestAndWrapsAround() throws Exception {
+        //第 n 次计次的累计时间为 n * 1000 + n, 每圈时间都不同
+        final int count = 3 * CAPACITY + 1;
+        for (int n = 1; n <= count; n++) {
+            mLaps.record(split(n));
+        }
+        assertEquals(CAPACITY, mLaps.size());
+        assertEquals(CAPACITY, mLaps.capacity());
+        assertEquals(count, mLaps.getTotalCount());
+        for (int i = 0; i < CAPACITY; i++) {
+            final int n = count - CAPACITY + 1 + i;
+            assertEquals(split(n), mLaps.getSplit(i));
+            assertEquals(n, mLaps.getLapNumber(i));
+            //包括 index 0, 与已被覆盖的上一条相减
+            assertEquals(split(n) - split(n - 1), mLaps.getLap(i));
+        }
+    }
+
+    @Test
+    public void clear_forgetsEvictedSplit() throws Exception {
+        for (int n = 1; n <= CAPACITY + 1; n++) {
+            mLaps.record(split(n));
+        }
+        mLaps.clear();
+        assertEquals(0, mLaps.size());
+        assertEquals(0, mLaps.getTotalCount());
+
+        mLaps.record(700);
+        assertEquals(700, mLaps.getLap(0));
+        assertEquals(1, mLaps.getLapNumber(0));
+    }
+
+    @Test
+    public void copySplits_clampsToSizeAndDestination() throws Exception {
+        for (int n = 1; n <= CAPACITY + 2; n++) {
+            mLaps.record(split(n));
+        }
+        final long[] dst = new long[3];
+        //从第 2 条开始只剩 2 条
+        assertEquals(2, mLaps.copySplits(2, dst, 0, 10));
+        assertEquals(split(5), dst[0]);
+        assertEquals(split(6), dst[1]);
+
+        //目标数组只剩 1 个位置
+        assertEquals(1, mLaps.copySplits(0, dst, 2, CAPACITY));
+        assertEquals(split(3), dst[2]);
+
+        assertEquals(0, mLaps.copySplits(CAPACITY, dst, 0, 1));
+        assertEquals(0, mLaps.copySplits(0, dst, 0, 0));
+        assertEquals(0, mLaps.copySplits(0, dst, dst.length, 1));
+    }
+
+    @Test
+    public void outOfRange_throws() throws Exception {
+        mLaps.record(1000);
+        try {
+            mLaps.getSplit(1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            mLaps.getLap(-1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            mLaps.copySplits(-1, new long[2], 0, 2);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            new LapBuffer(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static long split(int n) {
+        return n * TimeMath.SECOND_MILLIS + n;
+    }
+}
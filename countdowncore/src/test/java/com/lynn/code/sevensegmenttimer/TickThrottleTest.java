@@ -0,0 +1,72 @@
+package com.lynn.code.sevensegmenttimer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 使用可控的时钟模拟对齐到截止时刻 但有随机延迟的唤醒
+ */
+public class TickThrottleTest {
+    private static final long TOLERANCE = TimeMath.SECOND_MILLIS / 2;
+
+    private long mNow;
+    private Random mRandom;
+
+    @Before
+    public void setUp() throws Exception {
+        mNow = 1000;
+        mRandom = new Random(7);
+    }
+
+    @Test
+    public void jitteredTicks_sameInterval_deliversEveryTick() throws Exception {
+        final TickThrottle throttle = new TickThrottle(TimeMath.SECOND_MILLIS);
+        final int count = 100;
+        int delivered = 0;
+        for (int i = 0; i < count; i++) {
+            if (throttle.tryAcquire(nextTick(i), TOLERANCE)) {
+                delivered++;
+            }
+        }
+        assertEquals(count, delivered);
+    }
+
+    @Test
+    public void jitteredTicks_doubleInterval_deliversEveryOtherTick() throws Exception {
+        final TickThrottle throttle = new TickThrottle(2 * TimeMath.SECOND_MILLIS);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0, throttle.tryAcquire(nextTick(i), TOLERANCE));
+        }
+    }
+
+    @Test
+    public void longGap_doesNotBurst() throws Exception {
+        final TickThrottle throttle = new TickThrottle(TimeMath.SECOND_MILLIS);
+        assertTrue(throttle.tryAcquire(mNow, TOLERANCE));
+        //长时间没有唤醒后只放行一次, 之后从这里重新按间隔计算
+        mNow += TimeMath.MINUTE_MILLIS;
+        assertTrue(throttle.tryAcquire(mNow, TOLERANCE));
+        assertFalse(throttle.tryAcquire(mNow + 10, TOLERANCE));
+        assertTrue(throttle.tryAcquire(mNow + TimeMath.SECOND_MILLIS, TOLERANCE));
+    }
+
+    @Test
+    public void reset_deliversNextTick() throws Exception {
+        final TickThrottle throttle = new TickThrottle(TimeMath.MINUTE_MILLIS);
+        assertTrue(throttle.tryAcquire(mNow, TOLERANCE));
+        assertFalse(throttle.tryAcquire(mNow + TimeMath.SECOND_MILLIS, TOLERANCE));
+        throttle.reset();
+        assertTrue(throttle.tryAcquire(mNow + TimeMath.SECOND_MILLIS, TOLERANCE));
+    }
+
+    /**
+     * 第 i 次唤醒: 对齐到 1000 + i 秒, 延迟 0 ~ 20 millis
+     */
+    private long nextTick(int i) {
+        return mNow + i * TimeMath.SECOND_MILLIS + mRandom.nextInt(21);
+    }
+}
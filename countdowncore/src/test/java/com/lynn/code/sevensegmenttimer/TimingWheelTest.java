@@ -0,0 +1,105 @@
+package com.lynn.code.sevensegmenttimer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 时间轮的到期顺序, 取消, 以及跨层和超出范围的截止时刻
+ */
+public class TimingWheelTest {
+    private static final long TICK = 10;
+
+    private TimingWheel<String> mWheel;
+
+    @Before
+    public void setUp() throws Exception {
+        mWheel = new TimingWheel<>(TICK, 1000);
+    }
+
+    @Test
+    public void expiresNotBeforeDeadline() throws Exception {
+        mWheel.schedule(1015, "a");
+        mWheel.advance(1019);
+        assertNull(mWheel.poll());
+        assertEquals(1020, mWheel.nextDeadline());
+
+        mWheel.advance(1020);
+        assertEquals("a", mWheel.poll().getValue());
+        assertNull(mWheel.poll());
+        assertEquals(0, mWheel.size());
+        assertEquals(Long.MAX_VALUE, mWheel.nextDeadline());
+    }
+
+    @Test
+    public void unalignedStart_doesNotExpireEarly() throws Exception {
+        final TimingWheel<String> wheel = new TimingWheel<>(TICK, 1001);
+        wheel.schedule(1009, "a");
+        wheel.advance(1001);
+        assertNull(wheel.poll());
+        wheel.advance(1009);
+        assertNull(wheel.poll());
+
+        wheel.advance(1010);
+        assertEquals("a", wheel.poll().getValue());
+    }
+
+    @Test
+    public void pastDeadline_expiresImmediately() throws Exception {
+        final TimingWheel.Timeout<String> timeout = mWheel.schedule(500, "past");
+        assertTrue(timeout.isPending());
+        assertSame(timeout, mWheel.poll());
+        assertFalse(timeout.isPending());
+    }
+
+    @Test
+    public void cancel_removesPendingAndExpired() throws Exception {
+        final TimingWheel.Timeout<String> far = mWheel.schedule(1000 + 10 * TimeMath.MINUTE_MILLIS, "far");
+        final TimingWheel.Timeout<String> near = mWheel.schedule(1050, "near");
+        final TimingWheel.Timeout<String> kept = mWheel.schedule(1050, "kept");
+        assertTrue(mWheel.cancel(far));
+        assertFalse(mWheel.cancel(far));
+
+        mWheel.advance(2000);
+        assertTrue(mWheel.cancel(near));
+        assertSame(kept, mWheel.poll());
+        assertNull(mWheel.poll());
+        assertEquals(0, mWheel.size());
+
+        mWheel.advance(1000 + 20 * TimeMath.MINUTE_MILLIS);
+        assertNull(mWheel.poll());
+    }
+
+    @Test
+    public void randomDeadlines_expireInOrderAcrossLevels() throws Exception {
+        final Random random = new Random(42);
+        final int count = 5000;
+        //包括超出时间轮范围 (约 1.9 天) 的截止时刻
+        final long range = 5 * TimeMath.DAY_MILLIS;
+        for (int i = 0; i < count; i++) {
+            final long deadline = 1000 + (long) (random.nextDouble() * range);
+            mWheel.schedule(deadline, String.valueOf(deadline));
+        }
+
+        long now = 1000;
+        int expired = 0;
+        while (mWheel.size() > 0) {
+            //每次推进一段随机的时间, 模拟不规律的唤醒
+            final long previous = now;
+            now += 1 + random.nextInt((int) TimeMath.HOUR_MILLIS);
+            mWheel.advance(now);
+            TimingWheel.Timeout<String> timeout;
+            while ((timeout = mWheel.poll()) != null) {
+                assertTrue(timeout.getDeadline() <= now);
+                //上一次推进时已经到期的项不会留到这一批, 最多差一个 tick
+                assertTrue(timeout.getDeadline() > previous - TICK);
+                expired++;
+            }
+            assertTrue(mWheel.nextDeadline() > now - TICK);
+        }
+        assertEquals(count, expired);
+    }
+}
@@ -0,0 +1,323 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * 设备上的绘制和布局基准测试
+ * <p>
+ * 在主线程上重复 onDraw / measure + layout, 输出 中位数 和 p90 (ns)
+ * 结果同时写入 logcat 和 instrumentation status, 例如
+ * adb shell am instrument -w -e class com.lynn.code.sevensegmenttimer.DrawBenchmark ...
+ * 预热和测量次数固定, 便于比较不同版本
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawBenchmark {
+    private static final String TAG = "DrawBenchmark";
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 300;
+    //view 高度 dp
+    private static final int[] SIZES = {48, 96, 200};
+    //不同位数的格式
+    private static final String[] PATTERNS = {"SS", "MM:SS", "HH:MM:SS", "DDD HH:MM:SS.cc"};
+    //测量堆内存时同时保留的计时器个数
+    private static final int HEAP_VIEW_COUNT = 100;
+
+    @Test
+    public void digitViewDraw() throws Exception {
+        for (final int size : SIZES) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final SevenSegmentDigitView view = new SevenSegmentDigitView(context());
+                    view.setDigit(88);
+                    benchmarkDraw("digitView_draw_" + size + "dp", view, dpToPx(size) * 2, dpToPx(size));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void digitViewNoOffLayerDraw() throws Exception {
+        for (final int size : SIZES) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final SevenSegmentDigitView view = new SevenSegmentDigitView(context());
+                    view.setOffLayerEnabled(false);
+                    view.setDigit(88);
+                    benchmarkDraw("digitView_noOffLayerDraw_" + size + "dp", view, dpToPx(size) * 2, dpToPx(size));
+                }
+            });
+        }
+    }
+
+    /**
+     * 每次绘制前改变数值, 与计时时每次唤醒的情况相同, 分别测量 使用 / 不使用暗灯管的缓存
+     */
+    @Test
+    public void digitViewChangingDraw() throws Exception {
+        for (final int size : SIZES) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final SevenSegmentDigitView layered = new SevenSegmentDigitView(context());
+                    benchmarkChangingDraw("digitView_changingDraw_" + size + "dp", layered,
+                            dpToPx(size) * 2, dpToPx(size));
+
+                    final SevenSegmentDigitView plain = new SevenSegmentDigitView(context());
+                    plain.setOffLayerEnabled(false);
+                    benchmarkChangingDraw("digitView_noOffLayerChangingDraw_" + size + "dp", plain,
+                            dpToPx(size) * 2, dpToPx(size));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void digitViewAtlasDraw() throws Exception {
+        for (final int size : SIZES) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final SevenSegmentDigitView view = new SevenSegmentDigitView(context());
+                    view.setAtlasEnabled(true);
+                    view.setDigit(88);
+                    benchmarkDraw("digitView_atlasDraw_" + size + "dp", view, dpToPx(size) * 2, dpToPx(size));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void displayDraw() throws Exception {
+        for (final String pattern : PATTERNS) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final SevenSegmentDisplay view = new SevenSegmentDisplay(context());
+                    view.setPattern(pattern);
+                    view.setTime(3 * 24 * 60 * 60 * 1000L + 88888888L);
+                    final int height = dpToPx(96);
+                    benchmarkDraw("display_draw_" + pattern, view, height * pattern.length() / 2, height);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void timerMeasureLayout() throws Exception {
+        for (final int size : SIZES) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    benchmarkLayout("timer_layout_" + size + "dp", new CountDownDigitTimer(context()),
+                            dpToPx(size) * 6, dpToPx(size));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void flatTimerMeasureLayout() throws Exception {
+        for (final int size : SIZES) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final CountDownDigitTimer timer = new CountDownDigitTimer(context());
+                    timer.setDisplayPattern(SevenSegmentDisplay.DEFAULT_PATTERN);
+                    benchmarkLayout("flatTimer_layout_" + size + "dp", timer, dpToPx(size) * 6, dpToPx(size));
+                }
+            });
+        }
+    }
+
+    /**
+     * 创建 view 的耗时, 以及每个 view 占用的堆内存
+     * 模拟一个列表中同时创建大量计时器
+     */
+    @Test
+    public void construction() throws Exception {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final long[] samples = new long[ITERATIONS];
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    final long start = System.nanoTime();
+                    new SevenSegmentDigitView(context());
+                    final long duration = System.nanoTime() - start;
+                    if (i >= WARMUP) {
+                        samples[i - WARMUP] = duration;
+                    }
+                }
+                report("digitView_construct", samples);
+
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    final long start = System.nanoTime();
+                    new CountDownDigitTimer(context());
+                    final long duration = System.nanoTime() - start;
+                    if (i >= WARMUP) {
+                        samples[i - WARMUP] = duration;
+                    }
+                }
+                report("timer_construct", samples);
+
+                //共享之前每个 view 构造时都要重新生成的几何, 与共享后的取用对比
+                final RectF bounds = new RectF();
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    final long start = System.nanoTime();
+                    SevenSegmentDigitView.Segment.computeBounds(SevenSegmentDigitView.Segment.segments(), bounds);
+                    final long duration = System.nanoTime() - start;
+                    if (i >= WARMUP) {
+                        samples[i - WARMUP] = duration;
+                    }
+                }
+                report("segments_build", samples);
+
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    final long start = System.nanoTime();
+                    SevenSegmentDigitView.Segment.shared();
+                    SevenSegmentDigitView.Segment.sharedBounds();
+                    final long duration = System.nanoTime() - start;
+                    if (i >= WARMUP) {
+                        samples[i - WARMUP] = duration;
+                    }
+                }
+                report("segments_shared", samples);
+
+                reportRetainedHeap();
+            }
+        });
+    }
+
+    /**
+     * 保留 HEAP_VIEW_COUNT 个计时器, 比较创建前后的堆内存, 得到每个计时器的大致占用
+     */
+    private static void reportRetainedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        final CountDownDigitTimer[] timers = new CountDownDigitTimer[HEAP_VIEW_COUNT];
+        final long before = usedHeap(runtime);
+        for (int i = 0; i < HEAP_VIEW_COUNT; i++) {
+            timers[i] = new CountDownDigitTimer(context());
+        }
+        final long after = usedHeap(runtime);
+        final long perView = (after - before) / timers.length;
+        Log.i(TAG, "timer_retainedHeap " + perView + " bytes per timer");
+
+        final Bundle status = new Bundle();
+        status.putLong("timer_retainedHeap_bytes", perView);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    private static long usedHeap(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void benchmarkDraw(String name, View view, int width, int height) {
+        measureAndLayout(view, width, height);
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+
+        final long[] samples = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            final long start = System.nanoTime();
+            view.draw(canvas);
+            final long duration = System.nanoTime() - start;
+            if (i >= WARMUP) {
+                samples[i - WARMUP] = duration;
+            }
+        }
+        bitmap.recycle();
+        report(name, samples);
+    }
+
+    /**
+     * 与 benchmarkDraw 相同, 但每次绘制前 setDigit 一个新的值, 计入耗时
+     */
+    private void benchmarkChangingDraw(String name, SevenSegmentDigitView view, int width, int height) {
+        measureAndLayout(view, width, height);
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+
+        final long[] samples = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            final long start = System.nanoTime();
+            //两位数字每次都变化
+            view.setDigit(i % 2 == 0 ? 88 : 11);
+            view.draw(canvas);
+            final long duration = System.nanoTime() - start;
+            if (i >= WARMUP) {
+                samples[i - WARMUP] = duration;
+            }
+        }
+        bitmap.recycle();
+        report(name, samples);
+    }
+
+    private void benchmarkLayout(String name, ViewGroup view, int width, int height) {
+        final long[] samples = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            //强制重新测量, 不使用缓存
+            view.forceLayout();
+            for (int c = 0; c < view.getChildCount(); c++) {
+                view.getChildAt(c).forceLayout();
+            }
+            final long start = System.nanoTime();
+            measureAndLayout(view, width, height);
+            final long duration = System.nanoTime() - start;
+            if (i >= WARMUP) {
+                samples[i - WARMUP] = duration;
+            }
+        }
+        report(name, samples);
+    }
+
+    private static void measureAndLayout(View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+    }
+
+    private static void report(String name, long[] samples) {
+        Arrays.sort(samples);
+        final long median = samples[samples.length / 2];
+        final long p90 = samples[samples.length * 9 / 10];
+        Log.i(TAG, name + " median=" + median + "ns p90=" + p90 + "ns min=" + samples[0] + "ns");
+
+        final Bundle status = new Bundle();
+        status.putLong(name + "_median_ns", median);
+        status.putLong(name + "_p90_ns", p90);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(runnable);
+    }
+
+    private static Context context() {
+        return InstrumentationRegistry.getTargetContext();
+    }
+
+    private static int dpToPx(int dp) {
+        return (int) (dp * context().getResources().getDisplayMetrics().density);
+    }
+}
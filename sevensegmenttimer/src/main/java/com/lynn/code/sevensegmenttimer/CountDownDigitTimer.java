@@ -3,46 +3,135 @@ package com.lynn.code.sevensegmenttimer;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+import android.support.v4.os.TraceCompat;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.LinearLayout;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
 /**
  * 七段数码管 样式的 倒计时view
+ * 也可以切换为正计时的秒表模式, 见 {@link #setMode(int)}
  * Created by Lynn on 8/11/16.
  */
 
 public class CountDownDigitTimer extends LinearLayout {
-    private ScheduledExecutorService mTimer;
+    public static final int COUNT_DOWN = CountDownEngine.COUNT_DOWN;
+    public static final int COUNT_UP = CountDownEngine.COUNT_UP;
 
-    private int mHour;
-    private int mMinute;
-    private int mSecond;
+    /**
+     * 计时器使用的时钟, 休眠时也在走
+     * 在 model 中创建 {@link CountDownEngine} 用于 {@link #bind(CountDownEngine)} 时使用这个时钟
+     */
+    public static final CountDownEngine.Clock CLOCK = new CountDownEngine.Clock() {
+        @Override
+        public long millis() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private static final long SECOND_MILLIS = TimeMath.SECOND_MILLIS;
+    private static final int DEFAULT_LAP_CAPACITY = 100;
+    private static final long MINUTE_MILLIS = TimeMath.MINUTE_MILLIS;
+    private static final long HOUR_MILLIS = TimeMath.HOUR_MILLIS;
+
+    //部分显示的状态, 只在状态切换时修改子 view 的可见性
+    private static final int VISIBLE_ALL = 0;
+    private static final int VISIBLE_MINUTE_SECOND = 1;
+    private static final int VISIBLE_SECOND = 2;
+
+    //计时状态, 基于 SystemClock.elapsedRealtime(), 休眠时也在走
+    //绑定了外部的计时状态时指向外部对象, 否则为 mOwnEngine
+    private CountDownEngine mEngine;
+    private CountDownEngine mOwnEngine;
+
+    //正计时的计次记录
+    private LapBuffer mLaps;
+
+    //小时能显示的最大值, 由小时的位数决定, 超出时显示全 9
+    private int mMaxHour;
 
     private int mCurrentHour;
     private int mCurrentMinute;
     private int mCurrentSecond;
+    //分解时分秒用, 避免每次分配
+    private final int[] mTimeFields = new int[3];
+    //其他线程调用 setTime 时暂存的时分秒, 由预先分配的 mApplyPendingTime 在主线程一次应用
+    private final int[] mPendingTime = new int[3];
+    private boolean mPendingTimePosted;
+    private Runnable mApplyPendingTime;
 
     //only two tag visible if hour is zero
     private boolean mIsPartialVisibleIfLessThanAnHour;
     //only one tag visible if minute is zero
     private boolean mIsPartialVisibleIfLessThanAMinute;
+    private int mVisibleState;
 
     private TimeSeparatorView mLeftSeparator;
     private TimeSeparatorView mRightSeparator;
+    //分隔符闪烁的间隔, 0 表示常亮
+    private long mSeparatorBlinkInterval;
 
     private SevenSegmentDigitView mHourView;
     private SevenSegmentDigitView mMinuteView;
     private SevenSegmentDigitView mSecondView;
 
-    private Runnable mTask;
+    //设置了格式时, 由单个 view 绘制所有数字和分隔符, 代替上面的子 view
+    private SevenSegmentDisplay mDisplay;
+    //按时间自动切换的格式, 从粗到细, 时间大于 mStageThresholds[i] 时使用 mStagePatterns[i]
+    private String[] mStagePatterns;
+    private long[] mStageThresholds;
+    private int mStage;
+
+    //由共享的 TickEngine 在主线程回调
+    private TickEngine.OnTickListener mTask;
+    //显示不足一秒的单位时改为逐帧回调
+    private TickEngine.OnFrameListener mFrameTask;
 
     private OnCoundDownCallback mCallback;
+    //按最小间隔回调当前时间
+    private OnTickCallback mTickCallback;
+    //按计划的回调时刻判断间隔, 唤醒的延迟不会使回调被跳过
+    private TickThrottle mTickThrottle;
+
+    //保存颜色, 切换到单 view 绘制时使用
+    private int mTimerBgColor;
+    private int mSeparatorBgColor;
+    private int mSeparatorColor;
+    private int mTimerOnColor;
+    private int mTimerOffColor;
+
+    //未 attach 时不注册到 TickEngine, 避免静态的驱动持有 view
+    private boolean mIsAttached;
+
+    //不可见时暂停刷新, 倒计时只保留结束时刻的一次唤醒
+    private boolean mIsSuspended;
+    //不可见且只需要等结束时, 结束时刻放在共享的 DeadlineScheduler 中, 没有时为 null
+    private TimingWheel.Timeout<DeadlineScheduler.OnDeadlineListener> mFinishTimeout;
+    private DeadlineScheduler.OnDeadlineListener mFinishListener;
+    private boolean mIsWindowVisible;
+    private boolean mHasWindowFocus;
+    //是否有部分在屏幕上, attach, 布局, 滚动 和可见性变化时更新
+    private boolean mIsOnScreen;
+    //失去窗口焦点时是否也暂停, 默认不暂停 (例如弹出对话框时仍然可见)
+    private boolean mSuspendWhenUnfocused;
+    private Rect mVisibleRect;
+    private ViewTreeObserver.OnScrollChangedListener mScrollListener;
+
+    //性能统计, 默认不开启
+    private TimerMetrics mMetrics;
+    //下一次唤醒的预定时刻 uptimeMillis, 用于计算唤醒延迟
+    private long mScheduledUptime;
+    //上一次显示的时间, 用于判断数字是否跳过
+    private long mLastShown;
 
     public CountDownDigitTimer(Context context) {
         this(context, null);
@@ -63,6 +152,8 @@ public class CountDownDigitTimer extends LinearLayout {
         int separatorColor = a.getColor(R.styleable.CountDownDigitTimer_separatorColor, Color.BLACK);
         int timerOnColor = a.getColor(R.styleable.CountDownDigitTimer_timerOnColor, Color.WHITE);
         int timerOffColor = a.getColor(R.styleable.CountDownDigitTimer_timerOffColor, Color.GRAY);
+        String pattern = a.getString(R.styleable.CountDownDigitTimer_timerPattern);
+        int blinkInterval = a.getInt(R.styleable.CountDownDigitTimer_separatorBlinkInterval, 0);
 
         mHourView.setBackgroundColor(timerBgColor);
         mMinuteView.setBackgroundColor(timerBgColor);
@@ -79,7 +170,18 @@ public class CountDownDigitTimer extends LinearLayout {
         mLeftSeparator.setSeparatorColor(separatorColor);
         mRightSeparator.setSeparatorColor(separatorColor);
 
+        mTimerBgColor = timerBgColor;
+        mSeparatorBgColor = separatorBgColor;
+        mSeparatorColor = separatorColor;
+        mTimerOnColor = timerOnColor;
+        mTimerOffColor = timerOffColor;
+
         a.recycle();
+
+        if (pattern != null) {
+            setDisplayPattern(pattern);
+        }
+        setSeparatorBlinkInterval(blinkInterval);
     }
 
     private void init() {
@@ -89,10 +191,40 @@ public class CountDownDigitTimer extends LinearLayout {
 
         mIsPartialVisibleIfLessThanAnHour = false;
         mIsPartialVisibleIfLessThanAMinute = false;
+        mVisibleState = VISIBLE_ALL;
+
+        mOwnEngine = new CountDownEngine(CLOCK);
+        mEngine = mOwnEngine;
+        mMaxHour = 99;
+        mLaps = new LapBuffer(DEFAULT_LAP_CAPACITY);
+
+        mLastShown = -1;
+        mTickThrottle = new TickThrottle(0);
+
+        mApplyPendingTime = new Runnable() {
+            @Override
+            public void run() {
+                final int hour;
+                final int minute;
+                final int second;
+                synchronized (mPendingTime) {
+                    hour = mPendingTime[TimeMath.HOUR];
+                    minute = mPendingTime[TimeMath.MINUTE];
+                    second = mPendingTime[TimeMath.SECOND];
+                    mPendingTimePosted = false;
+                }
+                applyTime(hour, minute, second);
+            }
+        };
 
-        mHour = 0;
-        mMinute = 0;
-        mSecond = 0;
+        mVisibleRect = new Rect();
+        mScrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+            @Override
+            public void onScrollChanged() {
+                updateOnScreen();
+                updateSuspended();
+            }
+        };
 
         mLeftSeparator = new TimeSeparatorView(getContext());
         mRightSeparator = new TimeSeparatorView(getContext());
@@ -130,38 +262,17 @@ public class CountDownDigitTimer extends LinearLayout {
     }
 
     /**
-     * 根据传入的时间millis, 分解成时分秒
+     * 设置倒计时长度, 保留不足一秒的部分
      */
-    private void divideTime(int timestamp) {
-        int second = timestamp / 1000;
-        int minute = 0;
-        int hour = 0;
-
-        if (second > 60) {
-            minute = second / 60;
-            //更新剩下的秒
-            second %= 60;
-        }
-
-        if (minute > 60) {
-            hour = minute / 60;
-            //更新分钟
-            minute %= 60;
-        }
-
-        if (hour > 99) {
-            //最多计算 100小时 99:60:59
-            hour = 99;
-            //TODO 可以提醒输入超过99会被舍去
-        }
-
-        mHour = hour;
-        mMinute = minute;
-        mSecond = second;
+    public void setCountDownTimeStamp(int millis) {
+        setCountDownTimeStamp((long) millis);
     }
 
-    public void setCountDownTimeStamp(int millis) {
-        divideTime(millis);
+    /**
+     * 设置倒计时长度, 超过 int 范围 (约 24.8 天) 时使用
+     */
+    public void setCountDownTimeStamp(long millis) {
+        mEngine.setDuration(millis);
         startTask();
     }
 
@@ -176,112 +287,793 @@ public class CountDownDigitTimer extends LinearLayout {
         setCountDownTime(0, minute, second);
     }
 
+    /**
+     * 小时不限制大小, 超过小时位数能显示的范围时显示全 9, 见 {@link #setHourDigitCount(int)}
+     * 分, 秒 可以超过 59, 例如 90秒 即 1分30秒
+     */
     public void setCountDownTime(int hour, int minute, int second) {
-        if (hour > 99) {
-            //最多计算 100小时 99:60:59
-            hour = 99;
-            //TODO 可以提醒输入超过99会被舍去
-        }
-        this.mHour = hour;
-        this.mMinute = minute;
-        this.mSecond = second;
+        setCountDownTime(0, hour, minute, second);
+    }
 
+    public void setCountDownTime(int day, int hour, int minute, int second) {
+        mEngine.setDuration(TimeMath.toMillis(day, hour, minute, second));
         startTask();
     }
 
+    /**
+     * 绑定由外部保存的计时状态, 用于 RecyclerView 等会复用 view 的场景
+     * <p>
+     * 计时状态保存在 model 中, view 只负责显示, 绑定时不会 开始 / 重置 计时,
+     * 只按当前时间刷新一次显示并注册到共享的 {@link TickEngine}, 没有线程的创建和销毁
+     * 不在屏幕上的项没有 view, 也就没有任何刷新; 重新绑定时从截止时刻计算, 剩余时间始终正确
+     * <p>
+     * 外部的计时状态需要使用 {@link #CLOCK}, 例如
+     * <pre>
+     * CountDownEngine engine = new CountDownEngine(CountDownDigitTimer.CLOCK);
+     * engine.setDeadline(CountDownDigitTimer.CLOCK.millis() + remaining);
+     * </pre>
+     * 绑定后 start / pause / reset 等操作直接修改外部的计时状态
+     *
+     * @param engine 外部的计时状态, 为 null 时恢复使用 view 自己的计时状态
+     */
+    public void bind(CountDownEngine engine) {
+        if (engine == null) {
+            engine = mOwnEngine;
+        }
+        if (engine == mEngine) {
+            return;
+        }
+        stopTimer();
+        mEngine = engine;
+        //不同的计时状态之间不统计跳过的数字
+        mLastShown = -1;
+        updateDisplay();
+        if (mEngine.isCountDown() && mEngine.isRunning() && mEngine.getValue() == 0) {
+            //绑定时已经结束
+            finish();
+            return;
+        }
+        scheduleTask();
+    }
+
+    /**
+     * 当前使用的计时状态, 未绑定时为 view 自己的
+     */
+    public CountDownEngine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * 设置小时的位数, 默认 2 位, 超过 99 小时的倒计时可以设置为 3 位
+     * 单 view 模式下由格式决定位数
+     */
+    public void setHourDigitCount(int count) {
+        mHourView.setDigitCount(count);
+        //宽度按位数分配, 两位数字的权重为 3
+        ((LinearLayout.LayoutParams) mHourView.getLayoutParams()).weight = count * 3 / 2f;
+        mHourView.requestLayout();
+        mMaxHour = (int) Math.min(Integer.MAX_VALUE, Math.pow(10, count) - 1);
+        updateDisplay();
+    }
+
+    /**
+     * 数字变化时灯管渐变的时间, 0 表示直接切换, 见 {@link SevenSegmentDigitView#setFadeDuration(long)}
+     * 单 view 模式下不渐变
+     */
+    public void setFadeDuration(long millis) {
+        mHourView.setFadeDuration(millis);
+        mMinuteView.setFadeDuration(millis);
+        mSecondView.setFadeDuration(millis);
+    }
+
+    /**
+     * 计时中分隔符闪烁, 例如 500 即每秒亮灭一次, 0 表示常亮
+     * 分隔符与数字的跳变同时变亮, 由同一个 {@link TickEngine} 驱动, 只重绘分隔符, 不重绘数字
+     * 暂停, 结束 或不可见时常亮; 单 view 模式下不闪烁
+     */
+    public void setSeparatorBlinkInterval(long intervalMillis) {
+        mSeparatorBlinkInterval = Math.max(0, intervalMillis);
+        updateSeparatorBlink(mIsAttached && mEngine.isRunning() && !mIsSuspended);
+    }
+
+    /**
+     * 按当前时间对齐分隔符闪烁的相位, 不闪烁时恢复常亮
+     */
+    private void updateSeparatorBlink(boolean blink) {
+        if (!blink || mSeparatorBlinkInterval == 0) {
+            mLeftSeparator.setBlinkInterval(0);
+            mRightSeparator.setBlinkInterval(0);
+            return;
+        }
+        //数字跳变的时刻: 倒计时与截止时刻对齐, 正计时与开始时刻对齐
+        final long now = CLOCK.millis();
+        final long value = mEngine.getValue();
+        final long origin = mEngine.isCountDown() ? now + value : now - value;
+        mLeftSeparator.setBlinkOrigin(origin);
+        mRightSeparator.setBlinkOrigin(origin);
+        mLeftSeparator.setBlinkInterval(mSeparatorBlinkInterval);
+        mRightSeparator.setBlinkInterval(mSeparatorBlinkInterval);
+    }
+
+    /**
+     * 使用单个 {@link SevenSegmentDisplay} 按格式绘制, 例如 "HH:MM:SS", "MM:SS.cc", "DDD HH:MM"
+     * 所有数字和分隔符在一次 onDraw 中完成, 没有子 view 的测量和布局
+     * 单 view 模式下 部分显示 的设置不生效, 由格式决定显示哪些字段
+     *
+     * @param pattern 格式, 为 null 时恢复默认的子 view 显示
+     */
+    public void setDisplayPattern(String pattern) {
+        //固定的格式, 不再自动切换
+        mStagePatterns = null;
+        mStageThresholds = null;
+        applyDisplayPattern(pattern);
+    }
+
+    /**
+     * 按时间自动切换格式, 唤醒间隔随显示的最小单位变化
+     * <p>
+     * 例如剩余 40小时 时只显示 "HH:MM", 每分钟唤醒一次; 不足 1小时 显示 "MM:SS", 每秒唤醒;
+     * 不足 10秒 显示 "SS.cc", 逐帧刷新
+     * <pre>
+     * timer.setAdaptivePatterns(new String[]{"HH:MM", "MM:SS", "SS.cc"},
+     *         new long[]{TimeMath.HOUR_MILLIS, 10 * TimeMath.SECOND_MILLIS});
+     * </pre>
+     * 切换的时刻单独唤醒一次, 不受当前精度影响; 正计时同样按时间大小选择格式
+     *
+     * @param patterns   从粗到细的格式
+     * @param thresholds 从大到小, 个数比 patterns 少 1, 时间大于 thresholds[i] 时使用 patterns[i], 都不大于时使用最后一个
+     */
+    public void setAdaptivePatterns(String[] patterns, long[] thresholds) {
+        if (patterns == null || patterns.length == 0 || thresholds == null
+                || thresholds.length != patterns.length - 1) {
+            throw new IllegalArgumentException("格式的个数必须比切换时刻多 1");
+        }
+        for (int i = 1; i < thresholds.length; i++) {
+            if (thresholds[i] >= thresholds[i - 1]) {
+                throw new IllegalArgumentException("切换时刻必须从大到小");
+            }
+        }
+        mStagePatterns = patterns.clone();
+        mStageThresholds = thresholds.clone();
+        mStage = getStage(mEngine.getValue());
+        applyDisplayPattern(mStagePatterns[mStage]);
+    }
+
+    /**
+     * 时间对应的格式下标
+     */
+    private int getStage(long value) {
+        for (int i = 0; i < mStageThresholds.length; i++) {
+            if (value > mStageThresholds[i]) {
+                return i;
+            }
+        }
+        return mStageThresholds.length;
+    }
+
+    /**
+     * 距离切换到下一个格式的毫秒数, 不会再切换时为 Long.MAX_VALUE
+     */
+    private long getStageChangeDelay(long value) {
+        if (mStagePatterns == null) {
+            return Long.MAX_VALUE;
+        }
+        if (mEngine.isCountDown()) {
+            //减少到不大于当前格式的切换时刻
+            return mStage < mStageThresholds.length ? value - mStageThresholds[mStage] : Long.MAX_VALUE;
+        }
+        //增加到大于上一个格式的切换时刻
+        return mStage > 0 ? mStageThresholds[mStage - 1] - value + 1 : Long.MAX_VALUE;
+    }
+
+    private void applyDisplayPattern(String pattern) {
+        if (pattern == null) {
+            if (mDisplay == null) {
+                return;
+            }
+            mDisplay = null;
+            removeAllViews();
+            addView(mHourView);
+            addView(mLeftSeparator);
+            addView(mMinuteView);
+            addView(mRightSeparator);
+            addView(mSecondView);
+        } else {
+            if (mDisplay == null) {
+                mDisplay = new SevenSegmentDisplay(getContext());
+                mDisplay.setOnRes(mTimerOnColor);
+                mDisplay.setOffRes(mTimerOffColor);
+                mDisplay.setSeparatorColor(mSeparatorColor);
+                mDisplay.setDigitBackgroundColor(mTimerBgColor);
+                mDisplay.setSeparatorBackgroundColor(mSeparatorBgColor);
+                final int padding = dpToPx(8);
+                mDisplay.setPadding(padding, padding, padding, padding);
+                mDisplay.setLayoutParams(new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+                mDisplay.setMetrics(mMetrics);
+                removeAllViews();
+                addView(mDisplay);
+            }
+            mDisplay.setPattern(pattern);
+        }
+
+        //精度可能变化, 重新显示并安排唤醒
+        updateDisplay();
+        scheduleTask();
+    }
+
+    /**
+     * 切换 倒计时 / 正计时, 切换后停止计时并清空计次
+     */
+    public void setMode(@TimerMode int mode) {
+        if (mEngine.getMode() == mode) {
+            return;
+        }
+        stopTimer();
+        mEngine.setMode(mode);
+        mLaps.clear();
+        updateDisplay();
+    }
+
+    @TimerMode
+    public int getMode() {
+        return mEngine.getMode();
+    }
+
+    /**
+     * 开始计时, 倒计时从设置的长度重新开始, 正计时从 0 开始
+     */
+    public void start() {
+        if (mEngine.isCountDown()) {
+            startTask();
+            return;
+        }
+        mEngine.start();
+        mLaps.clear();
+        updateDisplay();
+        scheduleTask();
+    }
+
+    /**
+     * 暂停, 保留当前的时间
+     */
+    public void pause() {
+        if (!mEngine.isRunning()) {
+            return;
+        }
+        mEngine.pause();
+        stopTimer();
+        updateDisplay();
+    }
+
+    /**
+     * 从暂停处继续, 倒计时已经结束时不做任何事
+     */
+    public void resume() {
+        if (mEngine.isRunning()) {
+            return;
+        }
+        mEngine.resume();
+        if (!mEngine.isRunning()) {
+            //已经结束, 不再回调 onFinish
+            return;
+        }
+        updateDisplay();
+        scheduleTask();
+    }
+
+    /**
+     * 停止并回到初始时间, 清空计次
+     */
+    public void reset() {
+        stopTimer();
+        mEngine.reset();
+        mLaps.clear();
+        updateDisplay();
+    }
+
+    public boolean isRunning() {
+        return mEngine.isRunning();
+    }
+
+    /**
+     * 记录一次计次, 不分配对象
+     *
+     * @return 从开始到现在的累计时间 millis
+     */
+    public long lap() {
+        final long split = mEngine.getElapsed();
+        mLaps.record(split);
+        return split;
+    }
+
+    /**
+     * 计次记录, 直接按下标读取, 不会复制
+     */
+    public LapBuffer getLaps() {
+        return mLaps;
+    }
+
+    /**
+     * 设置最多保存的计次数, 会清空已有记录
+     */
+    public void setLapCapacity(int capacity) {
+        mLaps = new LapBuffer(capacity);
+    }
+
+    /**
+     * 开启性能统计, 为 null 时关闭
+     * 记录每次唤醒的延迟, 跳过 / 合并的唤醒, 以及数字 view 的 onDraw 耗时和刷新次数
+     * 逐帧刷新时没有预定的唤醒时刻, 只输出 systrace 区段
+     */
+    public void setMetrics(TimerMetrics metrics) {
+        mMetrics = metrics;
+        mHourView.setMetrics(metrics);
+        mMinuteView.setMetrics(metrics);
+        mSecondView.setMetrics(metrics);
+        if (mDisplay != null) {
+            mDisplay.setMetrics(metrics);
+        }
+    }
+
+    public TimerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 剩余时间不足一小时时, 隐藏小时
+     */
     public void setIsPartialVisibleIfLessThanAnHour(boolean isPartialVisibleIfLessThanAnHour) {
         this.mIsPartialVisibleIfLessThanAnHour = isPartialVisibleIfLessThanAnHour;
+        updateDisplay();
     }
 
+    /**
+     * 剩余时间不足一分钟时, 只显示秒
+     */
     public void setIsPartialVisibleIfLessThanAMinute(boolean isPartialVisibleIfLessThanAMinute) {
         this.mIsPartialVisibleIfLessThanAMinute = isPartialVisibleIfLessThanAMinute;
+        updateDisplay();
+    }
+
+    /**
+     * 根据显示的时间计算部分显示的状态, 只在跨过 一小时 / 一分钟 时修改可见性,
+     * 稳定倒计时的过程中不会触发 requestLayout
+     */
+    private void updateVisibleState(long shown) {
+        final int state;
+        if (mIsPartialVisibleIfLessThanAMinute && shown < MINUTE_MILLIS) {
+            state = VISIBLE_SECOND;
+        } else if (mIsPartialVisibleIfLessThanAnHour && shown < HOUR_MILLIS) {
+            state = VISIBLE_MINUTE_SECOND;
+        } else {
+            state = VISIBLE_ALL;
+        }
+        if (state == mVisibleState) {
+            return;
+        }
+        mVisibleState = state;
+
+        final int hourVisibility = state == VISIBLE_ALL ? View.VISIBLE : View.GONE;
+        final int minuteVisibility = state == VISIBLE_SECOND ? View.GONE : View.VISIBLE;
+        mHourView.setVisibility(hourVisibility);
+        mLeftSeparator.setVisibility(hourVisibility);
+        mMinuteView.setVisibility(minuteVisibility);
+        mRightSeparator.setVisibility(minuteVisibility);
     }
 
     private void initTask() {
-        mTask = new Runnable() {
+        mTask = new TickEngine.OnTickListener() {
             @Override
-            public void run() {
-                if (mIsPartialVisibleIfLessThanAMinute) {
-                    mHourView.setVisibility(View.GONE);
-                    mLeftSeparator.setVisibility(View.GONE);
-                    mMinuteView.setVisibility(View.GONE);
-                    mRightSeparator.setVisibility(View.GONE);
-                } else if (mIsPartialVisibleIfLessThanAnHour) {
-                    mHourView.setVisibility(View.GONE);
-                    mLeftSeparator.setVisibility(View.GONE);
-                } else {
-                    mHourView.setVisibility(View.VISIBLE);
-                    mLeftSeparator.setVisibility(View.VISIBLE);
-                    mMinuteView.setVisibility(View.VISIBLE);
-                    mRightSeparator.setVisibility(View.VISIBLE);
+            public void onTick(long uptimeMillis) {
+                if (mMetrics == null) {
+                    tick();
+                    return;
                 }
+                TraceCompat.beginSection(TimerMetrics.TRACE_TICK);
+                try {
+                    final long lastShown = mLastShown;
+                    final boolean updated = tick();
+                    //不可见时没有刷新显示, 只统计延迟
+                    long skippedSteps = 0;
+                    if (updated && lastShown >= 0) {
+                        skippedSteps = Math.max(0, Math.abs(mLastShown - lastShown) / getResolution() - 1);
+                    }
+                    mMetrics.recordTick(uptimeMillis - mScheduledUptime, skippedSteps);
+                } finally {
+                    TraceCompat.endSection();
+                }
+            }
+        };
 
-                if (mCurrentSecond > 0) {
-                    mCurrentSecond -= 1;
-                } else if (mCurrentMinute > 0) {
-                    mCurrentMinute -= 1;
-                    mCurrentSecond = 59;
-                } else if (mCurrentHour > 0) {
-                    mCurrentHour -= 1;
-                    mCurrentMinute = 59;
-                    mCurrentSecond = 59;
+        mFinishListener = new DeadlineScheduler.OnDeadlineListener() {
+            @Override
+            public void onDeadline(long deadline) {
+                mFinishTimeout = null;
+                if (mEngine.isCountDown() && mEngine.getValue() == 0) {
+                    finish();
+                } else {
+                    //截止时刻变化后没有重新安排的情况, 按当前状态重新安排
+                    scheduleTask();
                 }
+            }
+        };
 
-                post(new Runnable() {
-                    @Override
-                    public void run() {
-//                        Log.d("update time", mCurrentHour + " " + mCurrentMinute + " " + mCurrentSecond + " ");
-                        //更新ui
-                        mHourView.setDigit(mCurrentHour);
-                        mMinuteView.setDigit(mCurrentMinute);
-                        mSecondView.setDigit(mCurrentSecond);
-                    }
-                });
-
-                //判断计时是否结束
-                if (mCurrentSecond == 0 &&
-                        (mIsPartialVisibleIfLessThanAMinute || mCurrentMinute == 0) &&
-                        (mIsPartialVisibleIfLessThanAnHour || mCurrentHour == 0)) {
-                    if (mCallback != null) {
-                        mCallback.onFinish(CountDownDigitTimer.this);
-                    }
+        mFrameTask = new TickEngine.OnFrameListener() {
+            @Override
+            public void onFrame(long frameTimeNanos) {
+                if (mMetrics == null) {
+                    frame();
+                    return;
+                }
+                TraceCompat.beginSection(TimerMetrics.TRACE_FRAME);
+                try {
+                    frame();
+                } finally {
+                    TraceCompat.endSection();
                 }
             }
         };
     }
 
+    /**
+     * 逐帧刷新, 不分配对象
+     */
+    private void frame() {
+        final long value = updateDisplay();
+        if (value == 0 && mEngine.isCountDown()) {
+            finish();
+            return;
+        }
+        dispatchTickCallback(value);
+        if (getResolution() >= SECOND_MILLIS) {
+            //格式切换为按秒以上的单位, 改为定时唤醒
+            scheduleTask();
+        }
+    }
+
+    /**
+     * 按整秒唤醒时的一次回调
+     *
+     * @return 是否刷新了显示
+     */
+    private boolean tick() {
+        if (mIsSuspended) {
+            //不可见, 只检查倒计时是否结束, 不刷新显示
+            final long value = mEngine.getValue();
+            if (value == 0 && mEngine.isCountDown()) {
+                finish();
+            } else {
+                dispatchTickCallback(value);
+                scheduleSuspended(value);
+            }
+            return false;
+        }
+
+        //每次都从截止时刻重新计算, 被延迟的唤醒不会累积误差
+        final long value = updateDisplay();
+
+        //判断计时是否结束
+        if (mEngine.isCountDown() && value == 0) {
+            finish();
+            return true;
+        }
+        dispatchTickCallback(value);
+
+        //格式切换为逐帧刷新
+        final long resolution = getResolution();
+        if (resolution < SECOND_MILLIS) {
+            scheduleTask();
+            return true;
+        }
+
+        //在显示的最小单位刚跳变时唤醒, 数字在跳变的那一刻更新, 自动切换格式的时刻也唤醒一次
+        scheduleTick(Math.max(1, Math.min(TimeMath.nextChangeDelay(value, resolution, mEngine.isCountDown()),
+                getStageChangeDelay(value))));
+        return true;
+    }
+
+    private void scheduleTick(long delayMillis) {
+        mScheduledUptime = SystemClock.uptimeMillis() + delayMillis;
+        TickEngine.getInstance().schedule(mTask, delayMillis);
+    }
+
+    /**
+     * 倒计时归零, 注销所有唤醒, 回调只执行一次
+     * 结束后不再占用 TickEngine, 直到重新开始
+     */
+    private void finish() {
+        stopTimer();
+        if (!mEngine.isRunning()) {
+            //已经结束过
+            return;
+        }
+        mEngine.finish();
+        if (mTickCallback != null) {
+            mTickCallback.onTick(this, 0);
+        }
+        if (mCallback != null) {
+            mCallback.onFinish(this);
+        }
+    }
+
+    /**
+     * 按最小间隔回调当前时间
+     * 唤醒对齐到截止时刻, 实际间隔会在最小间隔附近抖动, 允许提前显示最小单位的一半
+     */
+    private void dispatchTickCallback(long value) {
+        if (mTickCallback == null) {
+            return;
+        }
+        if (!mTickThrottle.tryAcquire(CLOCK.millis(), getResolution() / 2)) {
+            return;
+        }
+        mTickCallback.onTick(this, value);
+    }
+
+    /**
+     * 不可见时安排下一次唤醒
+     * 只需要等倒计时结束时 (没有 mTickCallback), 结束时刻交给共享的 {@link DeadlineScheduler},
+     * 列表中大量不可见的计时器不占用 TickEngine, 添加和取消都是 O(1)
+     */
+    private void scheduleSuspended(long value) {
+        final TickEngine engine = TickEngine.getInstance();
+        final long delay = getSuspendedDelay(value);
+        if (delay == Long.MAX_VALUE) {
+            engine.unregister(mTask);
+        } else if (mTickCallback == null) {
+            engine.unregister(mTask);
+            if (mFinishTimeout == null) {
+                mFinishTimeout = DeadlineScheduler.getInstance().scheduleFinish(mEngine, mFinishListener);
+            }
+        } else {
+            scheduleTick(delay);
+        }
+    }
+
+    private void cancelFinishTimeout() {
+        if (mFinishTimeout != null) {
+            DeadlineScheduler.getInstance().cancel(mFinishTimeout);
+            mFinishTimeout = null;
+        }
+    }
+
+    /**
+     * 不可见时的唤醒间隔: 倒计时在结束时刻唤醒, 设置了 mTickCallback 时按回调间隔唤醒,
+     * 都没有时不唤醒, 返回 Long.MAX_VALUE
+     */
+    private long getSuspendedDelay(long value) {
+        long delay = mEngine.isCountDown() ? value : Long.MAX_VALUE;
+        if (mTickCallback != null) {
+            delay = Math.min(delay, Math.max(mTickThrottle.getInterval(), getResolution()));
+        }
+        return delay;
+    }
+
+    /**
+     * 计算当前时间, 并刷新显示
+     * 倒计时不足最小单位的部分向上取整, 剩余时间归零的那一刻才显示 0; 正计时向下取整
+     *
+     * @return 倒计时的剩余时间 或 正计时的已用时间 millis
+     */
+    private long updateDisplay() {
+        final long value = mEngine.getValue();
+        if (mStagePatterns != null && mDisplay != null) {
+            final int stage = getStage(value);
+            if (stage != mStage) {
+                //只在跨过切换时刻时改变格式, 调用者按新的精度重新安排唤醒
+                mStage = stage;
+                mDisplay.setPattern(mStagePatterns[stage]);
+            }
+        }
+        final long shown = TimeMath.roundForDisplay(value, getResolution(), mEngine.isCountDown());
+        mLastShown = shown;
+        //已经在主线程, 直接更新ui
+        if (mDisplay != null) {
+            //单 view 模式下由格式决定显示的字段
+            mDisplay.setTime(shown);
+        } else {
+            //分解成时分秒, 不足一秒的部分舍去, 三个数字一起刷新
+            TimeMath.divide(shown, mMaxHour, mTimeFields);
+            applyTime(mTimeFields[TimeMath.HOUR], mTimeFields[TimeMath.MINUTE], mTimeFields[TimeMath.SECOND]);
+        }
+        return value;
+    }
+
+    /**
+     * 一次显示 时分秒, 不影响计时, 计时中会被下一次刷新覆盖
+     * 三个数字在同一帧内刷新, 只有变化的数字会 invalidate
+     * 可以在任意线程调用, 其他线程的调用复用同一个 Runnable 切换到主线程, 一帧内多次调用只应用最后一次
+     */
+    public void setTime(int hour, int minute, int second) {
+        if (hour < 0 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            throw new IllegalArgumentException("时间不在显示范围");
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            applyTime(hour, minute, second);
+            return;
+        }
+        synchronized (mPendingTime) {
+            mPendingTime[TimeMath.HOUR] = hour;
+            mPendingTime[TimeMath.MINUTE] = minute;
+            mPendingTime[TimeMath.SECOND] = second;
+            if (mPendingTimePosted) {
+                return;
+            }
+            mPendingTimePosted = true;
+        }
+        post(mApplyPendingTime);
+    }
+
+    private void applyTime(int hour, int minute, int second) {
+        final long millis = hour * HOUR_MILLIS + minute * MINUTE_MILLIS + second * SECOND_MILLIS;
+        if (mDisplay != null) {
+            mDisplay.setTime(millis);
+            return;
+        }
+        updateVisibleState(millis);
+        //超出小时位数时显示全 9
+        mCurrentHour = Math.min(hour, mMaxHour);
+        mCurrentMinute = minute;
+        mCurrentSecond = second;
+        updateDigits();
+    }
+
+    /**
+     * 当前显示的最小单位 millis
+     */
+    private long getResolution() {
+        return mDisplay != null ? mDisplay.getResolution() : SECOND_MILLIS;
+    }
+
+    private void updateDigits() {
+//        Log.d("update time", mCurrentHour + " " + mCurrentMinute + " " + mCurrentSecond + " ");
+        mHourView.setDigit(mCurrentHour);
+        mMinuteView.setDigit(mCurrentMinute);
+        mSecondView.setDigit(mCurrentSecond);
+    }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
-        startTask();
+        mIsAttached = true;
+        mIsWindowVisible = getWindowVisibility() == View.VISIBLE;
+        mHasWindowFocus = hasWindowFocus();
+        //还没有布局时为 false, 布局后在 onLayout 中重新计算
+        updateOnScreen();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollListener);
+        mIsSuspended = !isVisibleToUser();
+
+        //从截止时刻继续, 不重新开始, 被复用的 view 重新 attach 时剩余时间不变
+        updateDisplay();
+        scheduleTask();
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        mIsAttached = false;
+        final ViewTreeObserver observer = getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.removeOnScrollChangedListener(mScrollListener);
+        }
         stopTimer();
     }
 
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        //一开始就在屏幕外, 且父 view 从不滚动时, 只能在布局后得知
+        if (mIsAttached) {
+            updateOnScreen();
+            updateSuspended();
+        }
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        //自身或者任意父 view 的可见性变化都会回调
+        if (mIsAttached) {
+            updateOnScreen();
+        }
+        updateSuspended();
+    }
+
+    /**
+     * 是否有部分在屏幕上, 按当前的位置计算
+     */
+    private void updateOnScreen() {
+        mIsOnScreen = getLocalVisibleRect(mVisibleRect);
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mIsWindowVisible = visibility == View.VISIBLE;
+        updateSuspended();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        mHasWindowFocus = hasWindowFocus;
+        updateSuspended();
+    }
+
+    /**
+     * 失去窗口焦点时是否暂停刷新, 默认 false
+     */
+    public void setSuspendWhenUnfocused(boolean suspendWhenUnfocused) {
+        mSuspendWhenUnfocused = suspendWhenUnfocused;
+        updateSuspended();
+    }
+
+    private boolean isVisibleToUser() {
+        return mIsAttached && mIsWindowVisible && mIsOnScreen && isShown()
+                && (mHasWindowFocus || !mSuspendWhenUnfocused);
+    }
+
+    /**
+     * 可见性变化时 暂停 / 恢复刷新
+     * 恢复时从截止时刻重新计算, 不补发错过的刷新
+     */
+    private void updateSuspended() {
+        final boolean suspended = !isVisibleToUser();
+        if (suspended == mIsSuspended) {
+            return;
+        }
+        mIsSuspended = suspended;
+        if (!suspended) {
+            updateDisplay();
+        }
+        scheduleTask();
+    }
+
     private void startTask() {
-        mCurrentHour = mHour;
-        mCurrentMinute = mMinute;
-        mCurrentSecond = mSecond;
+        if (!mEngine.isCountDown()) {
+            //正计时模式下只保存长度, 切回倒计时后生效
+            return;
+        }
+        mEngine.start();
 
-        //确保为空
-        stopTimer();
+        //先显示初始时间
+        updateDisplay();
+        scheduleTask();
+    }
 
-        //初始化定时任务
-        mTimer = Executors.newSingleThreadScheduledExecutor();
-        //启动定时任务 1秒一次回调
-        mTimer.scheduleAtFixedRate(mTask, 0, 1000, TimeUnit.MILLISECONDS);
+    /**
+     * 显示到秒时按整秒唤醒, 显示不足一秒的单位时逐帧刷新
+     * 不可见时倒计时只在结束时刻唤醒一次, 正计时完全不唤醒
+     * 未 attach 时不注册到 TickEngine, 避免静态的驱动持有 view
+     */
+    private void scheduleTask() {
+        if (!mIsAttached || !mEngine.isRunning()) {
+            return;
+        }
+        final TickEngine engine = TickEngine.getInstance();
+        updateSeparatorBlink(!mIsSuspended);
+        //截止时刻可能已经变化, 需要时重新添加
+        cancelFinishTimeout();
+        if (mIsSuspended) {
+            engine.unregisterFrameListener(mFrameTask);
+            //保证 onFinish 和 onTick 仍然按时回调
+            scheduleSuspended(mEngine.getValue());
+        } else if (getResolution() < SECOND_MILLIS) {
+            engine.unregister(mTask);
+            engine.registerFrameListener(mFrameTask);
+        } else {
+            engine.unregisterFrameListener(mFrameTask);
+            //注册到共享的计时驱动, 立即回调一次, 由回调安排之后的唤醒
+            scheduleTick(0);
+        }
     }
 
     private void stopTimer() {
-        if (mTimer != null && !mTimer.isShutdown()) {
-            mTimer.shutdown();
-        }
-        //置空
-        mTimer = null;
+        final TickEngine engine = TickEngine.getInstance();
+        engine.unregister(mTask);
+        engine.unregisterFrameListener(mFrameTask);
+        cancelFinishTimeout();
+        updateSeparatorBlink(false);
     }
 
     private int dpToPx(int dp) {
@@ -293,8 +1085,41 @@ public class CountDownDigitTimer extends LinearLayout {
         this.mCallback = callback;
     }
 
+    /**
+     * 按最小间隔回调当前时间, 为 null 时取消
+     * 回调在主线程执行, 不会比显示的最小单位更频繁; 不可见时也按间隔唤醒回调
+     * 倒计时结束时在 onFinish 之前回调一次 0
+     *
+     * @param minIntervalMillis 两次回调之间的最小间隔
+     */
+    public void setOnTickCallback(OnTickCallback callback, long minIntervalMillis) {
+        mTickCallback = callback;
+        mTickThrottle.setInterval(minIntervalMillis);
+        //不可见时的唤醒间隔可能变化
+        if (mIsSuspended) {
+            scheduleTask();
+        }
+    }
+
     public interface OnCoundDownCallback {
+        /**
+         * 倒计时归零时在主线程回调一次
+         */
         void onFinish(View v);
     }
+
+    public interface OnTickCallback {
+        /**
+         * 在主线程回调
+         *
+         * @param millis 倒计时的剩余时间 或 正计时的已用时间
+         */
+        void onTick(View v, long millis);
+    }
+
+    @IntDef(value = {COUNT_DOWN, COUNT_UP})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface TimerMode {
+    }
 }
 
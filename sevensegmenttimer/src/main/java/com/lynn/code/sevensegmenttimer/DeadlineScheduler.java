@@ -0,0 +1,142 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 进程内共享的截止时刻回调, 不需要 view
+ * <p>
+ * 所有截止时刻保存在一个 {@link TimingWheel} 中, 添加和取消都是 O(1),
+ * 例如同时有几千个倒计时, 每个都有 结束 以及 剩余 1分钟 / 10秒 的提醒
+ * 通过共享的 {@link TickEngine} 在主线程唤醒, 任何时刻最多一个待处理的唤醒, 与截止时刻的数量无关,
+ * 一次唤醒中到期的回调按到期顺序依次执行
+ * {@link CountDownDigitTimer} 不可见时也用它等待倒计时结束
+ * <p>
+ * 时间基准为 {@link CountDownDigitTimer#CLOCK}, 精度为 TICK_MILLIS, 回调不会早于截止时刻
+ * 只能在主线程调用
+ */
+
+public final class DeadlineScheduler {
+    public static final long TICK_MILLIS = 10;
+
+    private static DeadlineScheduler sInstance;
+
+    private final TimingWheel<OnDeadlineListener> mWheel;
+    private final TickEngine.OnTickListener mTick;
+    private boolean mDispatching;
+    //已安排的唤醒时刻, 没有时为 Long.MAX_VALUE, 更晚的截止时刻不需要重新安排
+    private long mWakeUpTime;
+
+    private DeadlineScheduler() {
+        mWheel = new TimingWheel<>(TICK_MILLIS, CountDownDigitTimer.CLOCK.millis());
+        mWakeUpTime = Long.MAX_VALUE;
+        mTick = new TickEngine.OnTickListener() {
+            @Override
+            public void onTick(long uptimeMillis) {
+                dispatch();
+            }
+        };
+    }
+
+    public static DeadlineScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new DeadlineScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 在截止时刻回调一次, 已过的截止时刻在下一次唤醒时回调
+     *
+     * @param deadline 截止时刻, {@link CountDownDigitTimer#CLOCK} 的时间
+     * @return 用于取消的句柄
+     */
+    public TimingWheel.Timeout<OnDeadlineListener> schedule(long deadline, OnDeadlineListener listener) {
+        final TimingWheel.Timeout<OnDeadlineListener> timeout = mWheel.schedule(deadline, listener);
+        //回调过程中添加的, 回调结束后统一安排
+        if (!mDispatching && deadline < mWakeUpTime) {
+            scheduleWakeUp();
+        }
+        return timeout;
+    }
+
+    /**
+     * 倒计时剩余 remainingMillis 时回调一次, 例如剩余 10秒 的提醒
+     * 截止时刻在添加时确定, 之后暂停 / 重新开始需要取消后重新添加
+     *
+     * @return 没有在倒计时时不添加, 返回 null
+     */
+    public TimingWheel.Timeout<OnDeadlineListener> scheduleRemaining(CountDownEngine engine, long remainingMillis,
+                                                                     OnDeadlineListener listener) {
+        if (!engine.isCountDown() || !engine.isRunning()) {
+            return null;
+        }
+        return schedule(engine.getDeadline() - remainingMillis, listener);
+    }
+
+    /**
+     * 倒计时结束时回调一次
+     */
+    public TimingWheel.Timeout<OnDeadlineListener> scheduleFinish(CountDownEngine engine, OnDeadlineListener listener) {
+        return scheduleRemaining(engine, 0, listener);
+    }
+
+    /**
+     * 取消, O(1)
+     *
+     * @return 已经回调或已经取消时为 false
+     */
+    public boolean cancel(TimingWheel.Timeout<OnDeadlineListener> timeout) {
+        if (!mWheel.cancel(timeout)) {
+            return false;
+        }
+        //还有其他截止时刻时保留已安排的唤醒, 最多多唤醒一次
+        if (!mDispatching && mWheel.size() == 0) {
+            TickEngine.getInstance().unregister(mTick);
+            mWakeUpTime = Long.MAX_VALUE;
+        }
+        return true;
+    }
+
+    /**
+     * 等待回调的数量
+     */
+    public int size() {
+        return mWheel.size();
+    }
+
+    private void dispatch() {
+        mWheel.advance(CountDownDigitTimer.CLOCK.millis());
+
+        mDispatching = true;
+        try {
+            TimingWheel.Timeout<OnDeadlineListener> timeout;
+            while ((timeout = mWheel.poll()) != null) {
+                timeout.getValue().onDeadline(timeout.getDeadline());
+            }
+        } finally {
+            mDispatching = false;
+        }
+        scheduleWakeUp();
+    }
+
+    /**
+     * 按最早可能到期的时刻唤醒, 没有截止时刻时注销
+     */
+    private void scheduleWakeUp() {
+        final TickEngine engine = TickEngine.getInstance();
+        final long next = mWheel.nextDeadline();
+        mWakeUpTime = next;
+        if (next == Long.MAX_VALUE) {
+            engine.unregister(mTick);
+            return;
+        }
+        engine.schedule(mTick, next - CountDownDigitTimer.CLOCK.millis());
+    }
+
+    public interface OnDeadlineListener {
+        /**
+         * 在主线程回调, 可以在回调中添加或取消其他截止时刻
+         *
+         * @param deadline 添加时的截止时刻
+         */
+        void onDeadline(long deadline);
+    }
+}
@@ -0,0 +1,57 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.graphics.Color;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 灯管渐变用的颜色表
+ * <p>
+ * 按 (暗, 亮) 两种颜色预先计算 STEPS 级的过渡色, 同样颜色的 view 共用一张表,
+ * 动画过程中直接按下标取色, 不做插值计算也不分配对象
+ * 只能在主线程调用
+ */
+
+final class FadeColors {
+    //过渡的级数, 下标 0 为暗, STEPS - 1 为亮
+    static final int STEPS = 32;
+    //颜色组合一般很少, 超过时直接清空重建
+    private static final int MAX_TABLES = 16;
+
+    private static final Map<Long, int[]> sTables = new HashMap<>();
+
+    private FadeColors() {
+    }
+
+    /**
+     * 取得从 off 到 on 的过渡色表, 只在颜色变化时调用
+     */
+    static int[] table(int off, int on) {
+        final Long key = ((long) off << 32) | (on & 0xFFFFFFFFL);
+        int[] table = sTables.get(key);
+        if (table == null) {
+            if (sTables.size() >= MAX_TABLES) {
+                sTables.clear();
+            }
+            table = new int[STEPS];
+            for (int i = 0; i < STEPS; i++) {
+                table[i] = blend(off, on, i / (float) (STEPS - 1));
+            }
+            sTables.put(key, table);
+        }
+        return table;
+    }
+
+    private static int blend(int from, int to, float fraction) {
+        return Color.argb(
+                lerp(Color.alpha(from), Color.alpha(to), fraction),
+                lerp(Color.red(from), Color.red(to), fraction),
+                lerp(Color.green(from), Color.green(to), fraction),
+                lerp(Color.blue(from), Color.blue(to), fraction));
+    }
+
+    private static int lerp(int from, int to, float fraction) {
+        return Math.round(from + (to - from) * fraction);
+    }
+}
@@ -0,0 +1,114 @@
+package com.lynn.code.sevensegmenttimer;
+
+/**
+ * 七段数码管 字形表
+ * 每个字形用一个 byte 掩码表示, 第 i 位代表第 i 个灯管是否发亮
+ * <p>
+ * 位 0 - 6 分别是 左上  左下  中上 中中 中下 右上 右下
+ * 与 {@link SevenSegmentDigitView.Segment} 的顺序一致
+ * <p>
+ * 字形编码 0 - 9 为数字, 10 - 15 为十六进制 A - F, 之后是符号和几个常用字母
+ * 编码直接作为下标查表, 绘制时不需要 switch 也不需要分配对象
+ */
+
+public final class Glyph {
+    public static final int SEGMENT_COUNT = 7;
+
+    public static final int MINUS = 16;
+    public static final int BLANK = 17;
+    public static final int LETTER_H = 18;
+    public static final int LETTER_L = 19;
+    public static final int LETTER_P = 20;
+    public static final int LETTER_U = 21;
+    public static final int LETTER_R = 22;
+    public static final int LETTER_N = 23;
+    public static final int LETTER_O = 24;
+
+    //字形总数
+    public static final int COUNT = 25;
+
+    private static final byte[] MASKS = {
+            //0 - 9
+            0x77, 0x60, 0x3E, 0x7C, 0x69, 0x5D, 0x5F, 0x64, 0x7F, 0x7D,
+            //A b C d E F
+            0x6F, 0x5B, 0x17, 0x7A, 0x1F, 0x0F,
+            //-  空白
+            0x08, 0x00,
+            //H L P U r n o
+            0x6B, 0x13, 0x2F, 0x73, 0x0A, 0x4A, 0x5A
+    };
+
+    private Glyph() {
+    }
+
+    /**
+     * 查询字形的灯管掩码, 超出范围的编码视为全灭
+     */
+    public static int mask(int code) {
+        if (code < 0 || code >= COUNT) {
+            return 0;
+        }
+        return MASKS[code];
+    }
+
+    /**
+     * 掩码中第 segment 个灯管是否发亮
+     */
+    public static boolean isOn(int mask, int segment) {
+        return (mask & (1 << segment)) != 0;
+    }
+
+    /**
+     * 字符转字形编码, 不支持的字符视为空白
+     */
+    public static int fromChar(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        switch (c) {
+            case 'A':
+            case 'a':
+                return 10;
+            case 'B':
+            case 'b':
+                return 11;
+            case 'C':
+            case 'c':
+                return 12;
+            case 'D':
+            case 'd':
+                return 13;
+            case 'E':
+            case 'e':
+                return 14;
+            case 'F':
+            case 'f':
+                return 15;
+            case '-':
+                return MINUS;
+            case 'H':
+            case 'h':
+                return LETTER_H;
+            case 'L':
+            case 'l':
+                return LETTER_L;
+            case 'P':
+            case 'p':
+                return LETTER_P;
+            case 'U':
+            case 'u':
+                return LETTER_U;
+            case 'R':
+            case 'r':
+                return LETTER_R;
+            case 'N':
+            case 'n':
+                return LETTER_N;
+            case 'O':
+            case 'o':
+                return LETTER_O;
+            default:
+                return BLANK;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 共享的字形位图
+ * <p>
+ * 相同尺寸, 相同 亮 / 暗 颜色的 {@link SevenSegmentDigitView} 共用一张位图,
+ * 所有字形只光栅化一次, 绘制时直接复制对应的格子
+ * <p>
+ * 缓存按最近最少使用淘汰, 总字节数不超过 {@link #setMaxCacheBytes(int)}
+ * 被淘汰的位图只是离开缓存, 仍在使用它的 view 不受影响, 之后由 GC 回收
+ */
+
+public final class GlyphAtlas {
+    //默认最多缓存 4MB
+    private static final int DEFAULT_MAX_CACHE_BYTES = 4 * 1024 * 1024;
+    //每行的格子数, 避免位图过宽超出纹理限制
+    private static final int COLUMNS = 5;
+
+    private static final Map<Key, GlyphAtlas> sCache = new LinkedHashMap<>(16, 0.75f, true);
+    private static int sMaxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+    private static int sCachedBytes;
+
+    private final Key mKey;
+    private final Bitmap mBitmap;
+    private final int mCellWidth;
+    private final int mCellHeight;
+    private final int mByteCount;
+
+    private GlyphAtlas(Key key, GlyphPaths paths, int cellWidth, int cellHeight) {
+        mKey = key;
+        mCellWidth = cellWidth;
+        mCellHeight = cellHeight;
+
+        final int rows = (Glyph.COUNT + COLUMNS - 1) / COLUMNS;
+        mBitmap = Bitmap.createBitmap(cellWidth * COLUMNS, cellHeight * rows, Bitmap.Config.ARGB_8888);
+        mByteCount = mBitmap.getWidth() * mBitmap.getHeight() * 4;
+
+        final Canvas canvas = new Canvas(mBitmap);
+        final Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setDither(true);
+        paint.setStyle(Paint.Style.FILL);
+        for (int code = 0; code < Glyph.COUNT; code++) {
+            canvas.save();
+            //移动到格子中央
+            canvas.translate((code % COLUMNS) * cellWidth + cellWidth / 2f,
+                    (code / COLUMNS) * cellHeight + cellHeight / 2f);
+
+            final Path unlit = paths.unlit(code);
+            if (!unlit.isEmpty()) {
+                paint.setColor(key.off);
+                canvas.drawPath(unlit, paint);
+            }
+            final Path lit = paths.lit(code);
+            if (!lit.isEmpty()) {
+                paint.setColor(key.on);
+                canvas.drawPath(lit, paint);
+            }
+            canvas.restore();
+        }
+    }
+
+    /**
+     * 取得对应的位图, 缓存中没有时用 paths 光栅化一张新的
+     *
+     * @param paths 已经按 scale 放大的字形
+     */
+    static synchronized GlyphAtlas obtain(GlyphPaths paths, int cellWidth, int cellHeight, int on, int off) {
+        final Key key = new Key(paths.getScale(), on, off);
+        GlyphAtlas atlas = sCache.get(key);
+        if (atlas != null) {
+            return atlas;
+        }
+
+        atlas = new GlyphAtlas(key, paths, cellWidth, cellHeight);
+        //单张超过上限的不缓存, 只给调用者自己使用
+        if (atlas.mByteCount <= sMaxCacheBytes) {
+            sCache.put(key, atlas);
+            sCachedBytes += atlas.mByteCount;
+            trimToSize(sMaxCacheBytes);
+        }
+        return atlas;
+    }
+
+    /**
+     * 设置缓存上限, 立即淘汰超出的部分
+     */
+    public static synchronized void setMaxCacheBytes(int maxBytes) {
+        sMaxCacheBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     */
+    public static synchronized int getCachedBytes() {
+        return sCachedBytes;
+    }
+
+    public static synchronized int getCachedCount() {
+        return sCache.size();
+    }
+
+    /**
+     * 清空缓存, 例如在 onTrimMemory 时调用
+     */
+    public static synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private static void trimToSize(int maxBytes) {
+        final Iterator<GlyphAtlas> iterator = sCache.values().iterator();
+        while (sCachedBytes > maxBytes && iterator.hasNext()) {
+            //按访问顺序, 最先取到的是最久未使用的
+            final GlyphAtlas eldest = iterator.next();
+            iterator.remove();
+            sCachedBytes -= eldest.mByteCount;
+        }
+    }
+
+    boolean matches(float scale, int on, int off) {
+        return mKey.scale == scale && mKey.on == on && mKey.off == off;
+    }
+
+    Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    int getCellWidth() {
+        return mCellWidth;
+    }
+
+    int getCellHeight() {
+        return mCellHeight;
+    }
+
+    /**
+     * 字形在位图中的范围
+     */
+    void getCell(int code, Rect out) {
+        if (code < 0 || code >= Glyph.COUNT) {
+            code = Glyph.BLANK;
+        }
+        final int left = (code % COLUMNS) * mCellWidth;
+        final int top = (code / COLUMNS) * mCellHeight;
+        out.set(left, top, left + mCellWidth, top + mCellHeight);
+    }
+
+    private static final class Key {
+        final float scale;
+        final int on;
+        final int off;
+
+        Key(float scale, int on, int off) {
+            this.scale = scale;
+            this.on = on;
+            this.off = off;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return Float.compare(key.scale, scale) == 0 && on == key.on && off == key.off;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(scale);
+            result = 31 * result + on;
+            result = 31 * result + off;
+            return result;
+        }
+    }
+}
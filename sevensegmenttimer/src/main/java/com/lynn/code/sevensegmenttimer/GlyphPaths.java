@@ -0,0 +1,117 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.graphics.Matrix;
+import android.graphics.Path;
+
+import java.util.List;
+
+/**
+ * 按当前缩放比例缓存的字形 path
+ * <p>
+ * 7个灯管只在缩放比例变化时变换一次,
+ * 每个字形的 亮 / 暗 灯管各自合并成一条 path, 绘制一个数字最多两次 drawPath
+ * 灯管之间的间隔由几何本身保留, 不需要额外的描边
+ */
+
+class GlyphPaths {
+    private final List<SevenSegmentDigitView.Segment> mSegments;
+
+    //放大后的灯管
+    private final Path[] mScaledSegments;
+    //按字形编码缓存, 用到时才合并
+    private final Path[] mLitPaths;
+    private final Path[] mUnlitPaths;
+
+    private final Matrix mMatrix;
+    private float mScale;
+
+    GlyphPaths(List<SevenSegmentDigitView.Segment> segments) {
+        mSegments = segments;
+        mScaledSegments = new Path[Glyph.SEGMENT_COUNT];
+        mLitPaths = new Path[Glyph.COUNT];
+        mUnlitPaths = new Path[Glyph.COUNT];
+        mMatrix = new Matrix();
+        //未初始化
+        mScale = -1;
+    }
+
+    /**
+     * 更新缩放比例, 比例不变时不做任何事
+     */
+    void setScale(float scale) {
+        if (scale == mScale) {
+            return;
+        }
+        mScale = scale;
+
+        mMatrix.setScale(scale, scale);
+        for (int i = 0; i < Glyph.SEGMENT_COUNT; i++) {
+            if (mScaledSegments[i] == null) {
+                mScaledSegments[i] = new Path();
+            }
+            mSegments.get(i).getPath().transform(mMatrix, mScaledSegments[i]);
+        }
+
+        //已合并的字形失效, 复用 path 对象
+        for (int i = 0; i < Glyph.COUNT; i++) {
+            if (mLitPaths[i] != null) {
+                merge(mLitPaths[i], Glyph.mask(i));
+            }
+            if (mUnlitPaths[i] != null) {
+                merge(mUnlitPaths[i], ~Glyph.mask(i));
+            }
+        }
+    }
+
+    float getScale() {
+        return mScale;
+    }
+
+    /**
+     * 字形中所有亮的灯管
+     */
+    Path lit(int code) {
+        final int index = toIndex(code);
+        if (mLitPaths[index] == null) {
+            mLitPaths[index] = new Path();
+            merge(mLitPaths[index], Glyph.mask(index));
+        }
+        return mLitPaths[index];
+    }
+
+    /**
+     * 字形中所有暗的灯管
+     */
+    Path unlit(int code) {
+        final int index = toIndex(code);
+        if (mUnlitPaths[index] == null) {
+            mUnlitPaths[index] = new Path();
+            merge(mUnlitPaths[index], ~Glyph.mask(index));
+        }
+        return mUnlitPaths[index];
+    }
+
+    /**
+     * 放大后的单个灯管, 逐个灯管绘制时使用, 未设置缩放比例时为 null
+     */
+    Path segment(int index) {
+        return mScaledSegments[index];
+    }
+
+    private static int toIndex(int code) {
+        return code < 0 || code >= Glyph.COUNT ? Glyph.BLANK : code;
+    }
+
+    private void merge(Path path, int mask) {
+        path.reset();
+        if (mScale < 0) {
+            return;
+        }
+        for (int i = 0; i < Glyph.SEGMENT_COUNT; i++) {
+            if (Glyph.isOn(mask, i)) {
+                //灯管互不重叠, 直接追加即可得到并集
+                path.addPath(mScaledSegments[i]);
+            }
+        }
+    }
+}
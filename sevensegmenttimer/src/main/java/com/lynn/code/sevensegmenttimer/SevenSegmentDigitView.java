@@ -1,34 +1,62 @@
 package com.lynn.code.sevensegmenttimer;
 
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Looper;
 import android.support.annotation.ColorInt;
+import android.support.v4.os.TraceCompat;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 七段数码管 view
+ * 默认显示两位数字, 位数可以用 digitCount 属性或 {@link #setDigitCount(int)} 设置
  * Created by Lynn on 8/10/16.
  */
 
 public class SevenSegmentDigitView extends View {
+    public static final int DEFAULT_DIGIT_COUNT = 2;
+    //long 最多能完整显示 18 位的 9
+    public static final int MAX_DIGIT_COUNT = 18;
+
     private static final int DEFAULT_ON = Color.WHITE;
     private static final int DEFAULT_OFF = Color.GRAY;
 
+    //10 的幂, 分解数值时使用
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGIT_COUNT + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_DIGIT_COUNT; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
     //显示的值
-    private int mDigit;
-    private int mRight;
-    private int mLeft;
+    private long mValue;
+    //默认全灭, 还没有设置过数值
+    private boolean mHasValue;
+    private int mDigitCount;
+    //每一位的字形编码, 从左到右
+    private int[] mCodes;
+    //计算新编码用, 与 mCodes 比较后只刷新变化的位
+    private int[] mNewCodes;
+    //是否显示高位的 0, 默认显示, 例如 05
+    private boolean mShowLeadingZeros;
 
     private int mOn;
     private int mOff;
@@ -36,11 +64,53 @@ public class SevenSegmentDigitView extends View {
     private int mInset;
 
     private List<Segment> mSegments;
+    //按当前尺寸放大后的字形
+    private GlyphPaths mGlyphPaths;
 
-    private Matrix mMatrix;
     private RectF mBound;
     private Paint mPaint;
-    private Path mCurrentPath;
+
+    //每一位数字中心相对 view 中心的偏移
+    private float[] mDigitOffsets;
+    //每一位数字各自的绘制范围, 用于局部刷新
+    private Rect[] mDigitRects;
+    private Rect mDirty;
+
+    //共享位图模式
+    private boolean mAtlasEnabled;
+    private GlyphAtlas mAtlas;
+    private Rect mAtlasSrc;
+    private Rect mAtlasDst;
+
+    //暗的灯管不随数值变化, 所有位的全部灯管用暗的颜色缓存在一张位图中, 每次只绘制亮的灯管
+    private boolean mOffLayerEnabled;
+    private Bitmap mOffLayer;
+    //位图在 view 中的位置, 即所有位绘制范围的并集
+    private Rect mOffLayerRect;
+    //尺寸, padding, 位数 或者暗的颜色变化后需要重新绘制
+    private boolean mOffLayerDirty;
+
+    //渐变模式, 数字变化时灯管在 mFadeDuration 内从暗过渡到亮 (或反过来), 0 表示不渐变
+    private long mFadeDuration;
+    //预先计算的过渡色, 颜色变化时重新获取
+    private int[] mFadeColors;
+    //每一位变化前的字形编码
+    private int[] mFadeFromCodes;
+    //每一位渐变开始的帧时间 ns, 小于 0 表示从下一帧开始
+    private long[] mFadeStartNanos;
+    //每一位当前的过渡级数, FadeColors.STEPS - 1 表示没有在渐变
+    private int[] mFadeSteps;
+    private boolean mFading;
+    //由 TickEngine 共用的 Choreographer 回调驱动, 只在渐变过程中注册
+    private TickEngine.OnFrameListener mFadeListener;
+    private Rect mFadeDirty;
+
+    //统计 跳过的刷新 和 只刷新部分数字的次数
+    private int mSkippedInvalidations;
+    private int mPartialInvalidations;
+
+    //性能统计, 默认不开启
+    private TimerMetrics mMetrics;
 
     public SevenSegmentDigitView(Context context) {
         this(context, null);
@@ -53,45 +123,122 @@ public class SevenSegmentDigitView extends View {
     public SevenSegmentDigitView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
         init();
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SevenSegmentDigitView, 0, 0);
+        final int digitCount = a.getInt(R.styleable.SevenSegmentDigitView_digitCount, DEFAULT_DIGIT_COUNT);
+        mShowLeadingZeros = a.getBoolean(R.styleable.SevenSegmentDigitView_showLeadingZeros, true);
+        a.recycle();
+
+        setDigitCount(digitCount);
     }
 
     private void init() {
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
         mPaint.setDither(true);
-
-        mMatrix = new Matrix();
-        mCurrentPath = new Path();
+        mPaint.setStyle(Paint.Style.FILL);
 
         mOn = DEFAULT_ON;
         mOff = DEFAULT_OFF;
 
         //默认全灭
-        mDigit = -1;
+        mHasValue = false;
+        mShowLeadingZeros = true;
         //pixel
         mInset = 10;
 
-        mSegments = Segment.segments();
-        if (mSegments == null || mSegments.isEmpty()) {
+        //灯管的几何形状和范围在进程内只计算一次, 所有 view 共用
+        mSegments = Segment.shared();
+        //显示一个数字 需要的最小空间, 只读
+        mBound = Segment.sharedBounds();
+
+        mGlyphPaths = new GlyphPaths(mSegments);
+
+        mDirty = new Rect();
+
+        mAtlasSrc = new Rect();
+        mAtlasDst = new Rect();
+
+        mOffLayerEnabled = true;
+        mOffLayerRect = new Rect();
+        mOffLayerDirty = true;
+
+        mFadeDirty = new Rect();
+        mFadeListener = new TickEngine.OnFrameListener() {
+            @Override
+            public void onFrame(long frameTimeNanos) {
+                updateFade(frameTimeNanos);
+            }
+        };
+
+        allocateDigits(DEFAULT_DIGIT_COUNT);
+    }
+
+    /**
+     * 按位数分配数组, 只在位数变化时调用
+     */
+    private void allocateDigits(int count) {
+        mDigitCount = count;
+        mCodes = new int[count];
+        mNewCodes = new int[count];
+        mDigitOffsets = new float[count];
+        mDigitRects = new Rect[count];
+        for (int i = 0; i < count; i++) {
+            mDigitRects[i] = new Rect();
+        }
+        mFadeFromCodes = new int[count];
+        mFadeStartNanos = new long[count];
+        mFadeSteps = new int[count];
+        mOffLayerDirty = true;
+        stopFade();
+    }
+
+    /**
+     * 设置显示的位数, 会重新测量
+     *
+     * @param count 1 - {@link #MAX_DIGIT_COUNT}
+     */
+    public void setDigitCount(int count) {
+        if (count < 1 || count > MAX_DIGIT_COUNT) {
+            throw new IllegalArgumentException("位数不在 1 - " + MAX_DIGIT_COUNT + " 之间");
+        }
+        if (count == mDigitCount) {
             return;
         }
+        allocateDigits(count);
+        if (mHasValue) {
+            updateCodes();
+        }
+        updateGeometry();
+        requestLayout();
+        invalidate();
+    }
+
+    public int getDigitCount() {
+        return mDigitCount;
+    }
 
-        //计算 显示一个数字 需要的最小空间
-        mBound = new RectF();
-        //为了取并集, 先计算其中一个空间
-        mSegments.get(0).path.computeBounds(mBound, true);
-        for (int i = 1; i < mSegments.size(); i++) {
-            //接着逐个计算
-            RectF singleBound = new RectF();
-            mSegments.get(i).path.computeBounds(singleBound, true);
-            //取并集
-            mBound.union(singleBound);
+    /**
+     * 是否显示高位的 0, 关闭后高位显示为空白, 负号紧贴最高的非零位
+     */
+    public void setShowLeadingZeros(boolean show) {
+        if (mShowLeadingZeros == show) {
+            return;
+        }
+        mShowLeadingZeros = show;
+        if (mHasValue) {
+            updateCodes();
+            invalidate();
         }
     }
 
+    public boolean isShowLeadingZeros() {
+        return mShowLeadingZeros;
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        setMeasuredDimension(measure(widthMeasureSpec, mBound.width() * 2), measure(heightMeasureSpec, mBound.height()));
+        setMeasuredDimension(measure(widthMeasureSpec, mBound.width() * mDigitCount), measure(heightMeasureSpec, mBound.height()));
     }
 
     private int measure(int spec, float desiredSize) {
@@ -115,87 +262,463 @@ public class SevenSegmentDigitView extends View {
         return result;
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry();
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        updateGeometry();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+        updateGeometry();
+    }
+
+    /**
+     * 尺寸, padding 或者位数变化时, 重新计算放大后的灯管和每一位的位置
+     * 绘制时直接使用缓存的 path, 不再逐帧变换
+     */
+    private void updateGeometry() {
+        if (mGlyphPaths == null) {
+            //构造过程中 super 可能先调用 setPadding
+            return;
+        }
+        final int w = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int h = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        //放大到接近宽, 高
+        final float scale = Math.min(w / mBound.width() / mDigitCount, h / mBound.height());
+        mGlyphPaths.setScale(scale);
+
+        //相邻两位中心的距离, 所有位以 view 中心对称排列
+        final float pitch = mBound.width() * scale + mInset;
+        for (int i = 0; i < mDigitCount; i++) {
+            mDigitOffsets[i] = (i - (mDigitCount - 1) / 2f) * pitch;
+            setDigitRect(mDigitRects[i], mDigitOffsets[i], scale);
+        }
+        mOffLayerDirty = true;
+    }
+
+    private void setDigitRect(Rect rect, float offset, float scale) {
+        final float centerX = getWidth() / 2 + offset;
+        final float centerY = getHeight() / 2;
+        final float halfWidth = mBound.width() * scale / 2;
+        final float halfHeight = mBound.height() * scale / 2;
+        //多留 2 pixel 给抗锯齿的边缘 和 共享位图的格子
+        rect.set((int) (centerX - halfWidth) - 2, (int) (centerY - halfHeight) - 2,
+                (int) (centerX + halfWidth) + 3, (int) (centerY + halfHeight) + 3);
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
-        mMatrix.reset();
-        // 移动到画布中央
-        canvas.translate(canvas.getWidth() / 2, canvas.getHeight() / 2);
+        if (mMetrics == null) {
+            drawContent(canvas);
+            return;
+        }
+        TraceCompat.beginSection(TimerMetrics.TRACE_DRAW);
+        try {
+            final long start = System.nanoTime();
+            drawContent(canvas);
+            mMetrics.recordDraw(System.nanoTime() - start);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
 
-        if (mSegments == null || mSegments.isEmpty()) {
+    private void drawContent(Canvas canvas) {
+        final float scale = mGlyphPaths.getScale();
+        if (scale <= 0) {
+            return;
+        }
+        if (mAtlasEnabled) {
+            drawFromAtlas(canvas, scale);
             return;
         }
+        //半透明的亮色叠在暗的颜色上会变色, 这时不使用缓存
+        final boolean useOffLayer = mOffLayerEnabled && Color.alpha(mOn) == 0xFF;
+        if (useOffLayer) {
+            if (mOffLayerDirty || mOffLayer == null) {
+                updateOffLayer();
+            }
+            //先画缓存的全部暗灯管, 再把亮的灯管画在上面
+            canvas.drawBitmap(mOffLayer, mOffLayerRect.left, mOffLayerRect.top, null);
+        }
 
-        final int w = canvas.getWidth() - getPaddingLeft() - getPaddingRight();
-        final int h = canvas.getHeight() - getPaddingTop() - getPaddingBottom();
-        final float widthFactor = Math.min(w / mBound.width() / 2, h / mBound.height());
-        //放大到接近宽, 高
-        mMatrix.preScale(widthFactor, widthFactor);
-        mPaint.setStrokeWidth(24);
+        // 移动到画布中央
+        canvas.translate(getWidth() / 2, getHeight() / 2);
+
+        for (int i = 0; i < mDigitCount; i++) {
+            if (mFadeSteps[i] < FadeColors.STEPS - 1) {
+                drawFadingDigit(canvas, i, !useOffLayer);
+            } else {
+                drawDigit(canvas, mDigitOffsets[i], mCodes[i], !useOffLayer);
+            }
+        }
+    }
 
-        //十位数
+    /**
+     * 重新绘制暗灯管的缓存, 只在尺寸, padding, 位数 或暗的颜色变化后调用, 与数值无关
+     * 与 onDraw 使用相同的整数中心和偏移, 位图按整数 pixel 对齐, 与亮的灯管完全重合
+     */
+    private void updateOffLayer() {
+        mOffLayerRect.set(mDigitRects[0]);
+        for (int i = 1; i < mDigitCount; i++) {
+            mOffLayerRect.union(mDigitRects[i]);
+        }
+        final int width = mOffLayerRect.width();
+        final int height = mOffLayerRect.height();
+        if (mOffLayer == null || mOffLayer.getWidth() != width || mOffLayer.getHeight() != height) {
+            //旧的位图可能仍被硬件加速的显示列表引用, 不 recycle, 交给 GC
+            mOffLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            mOffLayer.eraseColor(Color.TRANSPARENT);
+        }
+
+        final Canvas canvas = new Canvas(mOffLayer);
+        canvas.translate(getWidth() / 2 - mOffLayerRect.left, getHeight() / 2 - mOffLayerRect.top);
+        //空白字形的暗灯管即全部灯管
+        final Path all = mGlyphPaths.unlit(Glyph.BLANK);
+        mPaint.setColor(mOff);
+        for (int i = 0; i < mDigitCount; i++) {
+            canvas.save();
+            canvas.translate(mDigitOffsets[i], 0);
+            canvas.drawPath(all, mPaint);
+            canvas.restore();
+        }
+
+        mOffLayerDirty = false;
+    }
+
+    /**
+     * 绘制单个数字, 暗的灯管和亮的灯管各一次 drawPath
+     *
+     * @param drawUnlit 是否绘制暗的灯管, 使用缓存时只绘制亮的灯管
+     **/
+    private void drawDigit(Canvas canvas, float offset, int code, boolean drawUnlit) {
         canvas.save();
-        canvas.translate(-mBound.width() * widthFactor / 2 - mInset / 2, 0);
-        drawSegment(canvas, mLeft);
+        canvas.translate(offset, 0);
+
+        if (drawUnlit) {
+            final Path unlit = mGlyphPaths.unlit(code);
+            if (!unlit.isEmpty()) {
+                mPaint.setColor(mOff);
+                canvas.drawPath(unlit, mPaint);
+            }
+        }
+
+        final Path lit = mGlyphPaths.lit(code);
+        if (!lit.isEmpty()) {
+            mPaint.setColor(mOn);
+            canvas.drawPath(lit, mPaint);
+        }
         canvas.restore();
+    }
+
+    /**
+     * 渐变中的数字, 逐个灯管绘制, 颜色直接从过渡色表中取
+     * 只有渐变过程中的几帧会走这里, 之后恢复为合并的 path
+     */
+    private void drawFadingDigit(Canvas canvas, int position, boolean drawUnlit) {
+        if (mFadeColors == null) {
+            mFadeColors = FadeColors.table(mOff, mOn);
+        }
+        final int from = Glyph.mask(mFadeFromCodes[position]);
+        final int to = Glyph.mask(mCodes[position]);
+        final int step = mFadeSteps[position];
 
-        //个位数
         canvas.save();
-        canvas.translate(mBound.width() * widthFactor / 2 + mInset / 2, 0);
-        drawSegment(canvas, mRight);
+        canvas.translate(mDigitOffsets[position], 0);
+        for (int i = 0; i < Glyph.SEGMENT_COUNT; i++) {
+            final boolean wasOn = Glyph.isOn(from, i);
+            final boolean isOn = Glyph.isOn(to, i);
+            final int color;
+            if (wasOn && isOn) {
+                color = mOn;
+            } else if (isOn) {
+                //暗 -> 亮
+                color = mFadeColors[step];
+            } else if (wasOn) {
+                //亮 -> 暗
+                color = mFadeColors[FadeColors.STEPS - 1 - step];
+            } else if (drawUnlit) {
+                color = mOff;
+            } else {
+                //已经在暗灯管的缓存中
+                continue;
+            }
+            mPaint.setColor(color);
+            canvas.drawPath(mGlyphPaths.segment(i), mPaint);
+        }
         canvas.restore();
     }
 
     /**
-     * 绘制单个数字
-     * 0 - 6
-     * LT = 0
-     * LB = 1
-     * CT = 2
-     * CC = 3
-     * CB = 4
-     * RT = 5
-     * RB = 6
-     **/
-    private void drawSegment(Canvas canvas, int digit) {
-        for (int i = 0; i < mSegments.size(); i++) {
-            //变换到当前灯管, 并且按照实际绘制范围放大
-            mSegments.get(i).path.transform(mMatrix, mCurrentPath);
-            //这是为了保留一点间隔
-            mPaint.setStyle(Paint.Style.STROKE);
-            mPaint.setColor(Color.TRANSPARENT);
-            canvas.drawPath(mCurrentPath, mPaint);
+     * 共享位图模式, 直接复制预先光栅化的字形
+     */
+    private void drawFromAtlas(Canvas canvas, float scale) {
+        if (mAtlas == null || !mAtlas.matches(scale, mOn, mOff)) {
+            //尺寸或颜色变化后才需要重新获取
+            final int cellWidth = (int) Math.ceil(mBound.width() * scale) + 2;
+            final int cellHeight = (int) Math.ceil(mBound.height() * scale) + 2;
+            mAtlas = GlyphAtlas.obtain(mGlyphPaths, cellWidth, cellHeight, mOn, mOff);
+        }
 
-            mPaint.setStyle(Paint.Style.FILL);
-            //TODO 根据对应数字设置灯管是否 发亮, 通过颜色区分
-            mPaint.setColor(Digit.toDigit(digit).value(i) ? mOn : mOff);
-            //TODO 绘制数字
-            canvas.drawPath(mCurrentPath, mPaint);
-            //重置
-            mCurrentPath.reset();
+        for (int i = 0; i < mDigitCount; i++) {
+            drawAtlasDigit(canvas, mDigitOffsets[i], mCodes[i]);
         }
     }
 
+    private void drawAtlasDigit(Canvas canvas, float offset, int code) {
+        final int cellWidth = mAtlas.getCellWidth();
+        final int cellHeight = mAtlas.getCellHeight();
+        //对齐到整数 pixel, 避免位图被插值模糊
+        final int left = Math.round(getWidth() / 2 + offset - cellWidth / 2f);
+        final int top = Math.round(getHeight() / 2 - cellHeight / 2f);
+        mAtlasDst.set(left, top, left + cellWidth, top + cellHeight);
+        mAtlas.getCell(code, mAtlasSrc);
+        canvas.drawBitmap(mAtlas.getBitmap(), mAtlasSrc, mAtlasDst, null);
+    }
+
     /**
-     * 刷新数字
+     * 刷新数字, 数值必须在 0 到 当前位数能显示的最大值 之间
+     * 数值不变时不刷新, 只有部分数字变化时只刷新变化的那几位
      */
     public void setDigit(int digit) {
-        if (digit > 99 || digit < 0) {
+        if (digit < 0 || digit >= POWERS_OF_TEN[mDigitCount]) {
             throw new IllegalArgumentException("数值不在显示范围");
         }
-        this.mDigit = digit;
+        setValue(digit);
+    }
+
+    /**
+     * 显示任意整数, 不分配对象
+     * 负数在最高位前显示负号, 占用一位; 超出位数时显示全 9
+     * 数值不变时不刷新, 只有部分数字变化时只刷新变化的那几位
+     */
+    public void setValue(long value) {
+        if (mHasValue && value == mValue) {
+            mSkippedInvalidations++;
+            return;
+        }
+        mHasValue = true;
+        mValue = value;
 
-        //提取位数
-        if (mDigit >= 10) {
-            mLeft = mDigit / 10;
-            mRight = mDigit % 10;
-        } else if (mDigit > 0) {
-            mLeft = 0;
-            mRight = mDigit;
+        final int changed = updateCodes();
+        if (changed == 0) {
+            //例如 从默认的全灭状态设置为 0, 显示内容不变
+            mSkippedInvalidations++;
+        } else if (changed == mDigitCount || mGlyphPaths.getScale() <= 0) {
+            invalidateDigits(null);
         } else {
-            mLeft = 0;
-            mRight = 0;
+            mPartialInvalidations++;
+            invalidateDigits(mDirty);
+        }
+    }
+
+    /**
+     * 在主线程直接 invalidate, 同一帧内的多次刷新合并到下一次绘制, 不经过消息队列
+     * 其他线程调用时才 postInvalidate
+     *
+     * @param dirty 需要刷新的范围, 为 null 时刷新整个 view
+     */
+    private void invalidateDigits(Rect dirty) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            if (dirty == null) {
+                invalidate();
+            } else {
+                invalidate(dirty);
+            }
+        } else if (dirty == null) {
+            postInvalidate();
+        } else {
+            postInvalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        }
+        recordInvalidation();
+    }
+
+    public long getValue() {
+        return mValue;
+    }
+
+    /**
+     * 把数值分解到每一位的字形编码, 见 {@link #encode(long, int, boolean, int[], int)}
+     * 同时把变化的位的范围合并到 mDirty
+     *
+     * @return 变化的位数
+     */
+    private int updateCodes() {
+        encode(mValue, mDigitCount, mShowLeadingZeros, mNewCodes, 0);
+
+        //只在主线程, 已 attach 时渐变, 共享位图模式不支持渐变
+        final boolean fade = mFadeDuration > 0 && !mAtlasEnabled && getWindowToken() != null
+                && Looper.myLooper() == Looper.getMainLooper();
+
+        mDirty.setEmpty();
+        int changed = 0;
+        for (int i = 0; i < mDigitCount; i++) {
+            final int code = mNewCodes[i];
+            if (code != mCodes[i]) {
+                if (fade) {
+                    //正在渐变时从当前的目标开始新的渐变
+                    mFadeFromCodes[i] = mCodes[i];
+                    mFadeStartNanos[i] = -1;
+                    mFadeSteps[i] = 0;
+                }
+                mCodes[i] = code;
+                mDirty.union(mDigitRects[i]);
+                changed++;
+            }
+        }
+        if (fade && changed > 0 && !mFading) {
+            mFading = true;
+            TickEngine.getInstance().registerFrameListener(mFadeListener);
+        }
+        return changed;
+    }
+
+    /**
+     * 把数值按位转为字形编码, 从左到右写入 out 中 offset 开始的 digitCount 个位置, 不分配对象
+     * 负数在最高的非零位之前显示负号, 超出位数时显示全 9
+     * 不访问 view 的状态, 可以在任意线程调用
+     */
+    static void encode(long value, int digitCount, boolean showLeadingZeros, int[] out, int offset) {
+        final boolean negative = value < 0;
+        //负号占用一位
+        final int available = negative ? digitCount - 1 : digitCount;
+        long magnitude = negative ? -value : value;
+        //POWERS_OF_TEN 包括 10^MAX_DIGIT_COUNT, 18 位时同样需要限制
+        if (magnitude < 0 || magnitude >= POWERS_OF_TEN[available]) {
+            //超出位数, 显示全 9, Long.MIN_VALUE 取反后仍为负数也归到这里
+            magnitude = POWERS_OF_TEN[available] - 1;
+        }
+
+        boolean signShown = false;
+        for (int i = digitCount - 1; i >= 0; i--) {
+            //从右往左, 第几位
+            final int place = digitCount - 1 - i;
+            final int code;
+            if (place < available && (magnitude > 0 || place == 0 || showLeadingZeros)) {
+                code = (int) (magnitude % 10);
+                magnitude /= 10;
+            } else if (negative && !signShown) {
+                code = Glyph.MINUS;
+                signShown = true;
+            } else {
+                code = Glyph.BLANK;
+            }
+            out[offset + i] = code;
+        }
+    }
+
+    /**
+     * 每帧推进渐变, 只刷新过渡级数变化的数字, 全部结束后注销
+     */
+    private void updateFade(long frameTimeNanos) {
+        final int last = FadeColors.STEPS - 1;
+        final long durationNanos = mFadeDuration * 1000000L;
+        boolean fading = false;
+        mFadeDirty.setEmpty();
+        for (int i = 0; i < mDigitCount; i++) {
+            if (mFadeSteps[i] >= last) {
+                continue;
+            }
+            if (mFadeStartNanos[i] < 0) {
+                mFadeStartNanos[i] = frameTimeNanos;
+            }
+            final long elapsed = frameTimeNanos - mFadeStartNanos[i];
+            final int step = (int) Math.min(last, elapsed * last / durationNanos);
+            if (step != mFadeSteps[i]) {
+                mFadeSteps[i] = step;
+                mFadeDirty.union(mDigitRects[i]);
+            }
+            if (step < last) {
+                fading = true;
+            }
+        }
+        if (!mFadeDirty.isEmpty()) {
+            invalidate(mFadeDirty);
+        }
+        if (!fading) {
+            stopFade();
+        }
+    }
+
+    /**
+     * 结束所有渐变, 直接显示目标状态
+     */
+    private void stopFade() {
+        final int last = FadeColors.STEPS - 1;
+        for (int i = 0; i < mFadeSteps.length; i++) {
+            mFadeSteps[i] = last;
+        }
+        if (mFading) {
+            mFading = false;
+            TickEngine.getInstance().unregisterFrameListener(mFadeListener);
+        }
+    }
+
+    private void recordInvalidation() {
+        if (mMetrics != null) {
+            mMetrics.recordInvalidation();
         }
-        postInvalidate();
+    }
+
+    /**
+     * 开启性能统计, 记录 onDraw 耗时和刷新次数, 为 null 时关闭
+     * 多个 view 可以共用一个统计对象
+     */
+    public void setMetrics(TimerMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public TimerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 因为数值未变化而跳过的刷新次数
+     */
+    public int getSkippedInvalidationCount() {
+        return mSkippedInvalidations;
+    }
+
+    /**
+     * 只刷新了部分数字的次数
+     */
+    public int getPartialInvalidationCount() {
+        return mPartialInvalidations;
+    }
+
+    public void resetInvalidationCount() {
+        mSkippedInvalidations = 0;
+        mPartialInvalidations = 0;
+    }
+
+    /**
+     * 开启后 尺寸和颜色相同的 view 共用一张预先光栅化的字形位图
+     * 适合大量同样式的 view 同时显示
+     */
+    public void setAtlasEnabled(boolean enabled) {
+        if (mAtlasEnabled == enabled) {
+            return;
+        }
+        mAtlasEnabled = enabled;
+        if (!enabled) {
+            mAtlas = null;
+        }
+        invalidate();
+    }
+
+    public boolean isAtlasEnabled() {
+        return mAtlasEnabled;
     }
 
     /**
@@ -203,13 +726,70 @@ public class SevenSegmentDigitView extends View {
      */
     public void setOnRes(@ColorInt int on) {
         this.mOn = on;
+        mFadeColors = null;
     }
 
     /**
      * 设置暗的颜色
      */
     public void setOffRes(@ColorInt int off) {
+        if (mOff != off) {
+            mOffLayerDirty = true;
+        }
         this.mOff = off;
+        mFadeColors = null;
+    }
+
+    /**
+     * 设置渐变时间, 数字变化时亮暗变化的灯管在这段时间内过渡, 0 表示直接切换 (默认)
+     * 过渡色预先计算, 动画过程中不分配对象; 共享位图模式下不渐变
+     */
+    public void setFadeDuration(long millis) {
+        mFadeDuration = Math.max(0, millis);
+        if (mFadeDuration == 0 && mFading) {
+            stopFade();
+            invalidate();
+        }
+    }
+
+    public long getFadeDuration() {
+        return mFadeDuration;
+    }
+
+    /**
+     * 是否缓存暗的灯管, 默认开启
+     * 开启后每次刷新只绘制亮的灯管, 缓存只在尺寸, padding, 位数 或暗的颜色变化后重新绘制
+     * 代价是每个 view 一张覆盖所有位的 ARGB_8888 位图, 大小为 绘制范围的宽 x 高 x 4 字节,
+     * 一个时分秒计时器有三个这样的 view, 大量计时器时可以关闭; detach 后释放
+     * 亮的灯管画在暗的灯管上, 抗锯齿的边缘会带一点暗的颜色; 亮色半透明时自动不使用缓存
+     */
+    public void setOffLayerEnabled(boolean enabled) {
+        if (mOffLayerEnabled == enabled) {
+            return;
+        }
+        mOffLayerEnabled = enabled;
+        if (!enabled) {
+            releaseOffLayer();
+        }
+        invalidate();
+    }
+
+    public boolean isOffLayerEnabled() {
+        return mOffLayerEnabled;
+    }
+
+    private void releaseOffLayer() {
+        mOffLayer = null;
+        mOffLayerDirty = true;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        //不在窗口中时不占用位图, 重新 attach 后绘制时再创建
+        releaseOffLayer();
+        //不再持有 TickEngine 的回调
+        stopFade();
     }
 
     /**
@@ -229,69 +809,82 @@ public class SevenSegmentDigitView extends View {
      * 9 :   on   off  on  on   on  on  on
      * 默认状态
      * all:  off  off  off off  off off off
+     * <p>
+     * 实际的规则保存在 {@link Glyph} 的掩码表中, Digit 只是对掩码的包装
      */
     public static class Digit {
         private static final boolean ON = true;
         private static final boolean OFF = false;
 
-        public static Digit DEFAULT = new Digit();
+        public static Digit DEFAULT = new Digit(Glyph.mask(Glyph.BLANK));
         /**
          * 表示数字 0 - 9
          */
-        public static Digit ZERO = new Digit(ON, ON, ON, OFF, ON, ON, ON);
-        public static Digit ONE = new Digit(OFF, OFF, OFF, OFF, OFF, ON, ON);
-        public static Digit TWO = new Digit(OFF, ON, ON, ON, ON, ON);
-        public static Digit THREE = new Digit(OFF, OFF, ON, ON, ON, ON, ON);
-        public static Digit FOUR = new Digit(ON, OFF, OFF, ON, OFF, ON, ON);
-        public static Digit FIVE = new Digit(ON, OFF, ON, ON, ON, OFF, ON);
-        public static Digit SIX = new Digit(ON, ON, ON, ON, ON, OFF, ON);
-        public static Digit SEVEN = new Digit(OFF, OFF, ON, OFF, OFF, ON, ON);
-        public static Digit EIGHT = new Digit(ON, ON, ON, ON, ON, ON, ON);
-        public static Digit NIGHT = new Digit(ON, OFF, ON, ON, ON, ON, ON);
-
-        private boolean[] segments;
+        public static Digit ZERO = new Digit(Glyph.mask(0));
+        public static Digit ONE = new Digit(Glyph.mask(1));
+        public static Digit TWO = new Digit(Glyph.mask(2));
+        public static Digit THREE = new Digit(Glyph.mask(3));
+        public static Digit FOUR = new Digit(Glyph.mask(4));
+        public static Digit FIVE = new Digit(Glyph.mask(5));
+        public static Digit SIX = new Digit(Glyph.mask(6));
+        public static Digit SEVEN = new Digit(Glyph.mask(7));
+        public static Digit EIGHT = new Digit(Glyph.mask(8));
+        public static Digit NIGHT = new Digit(Glyph.mask(9));
+
+        //按字形编码索引, 0 - 9 复用上面的常量
+        private static final Digit[] DIGITS = new Digit[Glyph.COUNT];
 
+        static {
+            final Digit[] numbers = {ZERO, ONE, TWO, THREE, FOUR, FIVE, SIX, SEVEN, EIGHT, NIGHT};
+            for (int i = 0; i < Glyph.COUNT; i++) {
+                DIGITS[i] = i < numbers.length ? numbers[i] : new Digit(Glyph.mask(i));
+            }
+        }
+
+        private final int mask;
+        private final boolean[] segments;
+
+        /**
+         * 按字形编码取得 Digit, 超出范围返回全灭
+         */
         public static Digit toDigit(int value) {
-            switch (value) {
-                case 0:
-                    return ZERO;
-                case 1:
-                    return ONE;
-                case 2:
-                    return TWO;
-                case 3:
-                    return THREE;
-                case 4:
-                    return FOUR;
-                case 5:
-                    return FIVE;
-                case 6:
-                    return SIX;
-                case 7:
-                    return SEVEN;
-                case 8:
-                    return EIGHT;
-                case 9:
-                    return NIGHT;
-                default:
-                    return DEFAULT;
+            if (value < 0 || value >= Glyph.COUNT) {
+                return DEFAULT;
             }
+            return DIGITS[value];
         }
 
         Digit(boolean... isOns) {
-            //最多只要 7个状态, 多传入忽视
-            final int size = isOns.length > 7 ? 7 : isOns.length;
-            segments = new boolean[7];
-            //缺少的参数默认为 off
+            //最多只要 7个状态, 多传入忽视, 缺少的参数默认为 off
+            final int size = isOns.length > Glyph.SEGMENT_COUNT ? Glyph.SEGMENT_COUNT : isOns.length;
+            int mask = 0;
             for (int i = 0; i < size; i++) {
-                segments[i] = isOns[i];
+                if (isOns[i]) {
+                    mask |= 1 << i;
+                }
             }
+            this.mask = mask;
+            this.segments = toSegments(mask);
+        }
 
-            if (size < 7) {
-                for (int i = size; i < 7; i++) {
-                    segments[i] = OFF;
-                }
+        private Digit(int mask) {
+            this.mask = mask;
+            this.segments = toSegments(mask);
+        }
+
+        private static boolean[] toSegments(int mask) {
+            final boolean[] segments = new boolean[Glyph.SEGMENT_COUNT];
+            for (int i = 0; i < Glyph.SEGMENT_COUNT; i++) {
+                segments[i] = Glyph.isOn(mask, i) ? ON : OFF;
             }
+            return segments;
+        }
+
+        /**
+         * 灯管掩码, 第 i 位对应第 i 个灯管
+         */
+        public int mask() {
+            return mask;
         }
 
         public boolean[] values() {
@@ -299,12 +892,10 @@ public class SevenSegmentDigitView extends View {
         }
 
         public boolean value(int i) {
-            if (segments == null ||
-                    segments.length <= i ||
-                    i < 0) {
+            if (i < 0 || i >= Glyph.SEGMENT_COUNT) {
                 return false;
             }
-            return segments[i];
+            return Glyph.isOn(mask, i);
         }
     }
 
@@ -374,6 +965,53 @@ public class SevenSegmentDigitView extends View {
             }
         }
 
+        /**
+         * 以图形对称中心为原点的灯管, 只读
+         */
+        Path getPath() {
+            return path;
+        }
+
+        /**
+         * 计算 显示一个数字 需要的最小空间, 即所有灯管范围的并集
+         */
+        static void computeBounds(List<Segment> segments, RectF out) {
+            //为了取并集, 先计算其中一个空间
+            segments.get(0).path.computeBounds(out, true);
+            final RectF singleBound = new RectF();
+            for (int i = 1; i < segments.size(); i++) {
+                //接着逐个计算
+                segments.get(i).path.computeBounds(singleBound, true);
+                //取并集
+                out.union(singleBound);
+            }
+        }
+
+        //进程内共用的未放大的灯管 和 它们的范围, 创建后不再修改
+        private static List<Segment> sShared;
+        private static RectF sSharedBounds;
+
+        /**
+         * 进程内共用的 7个灯管, 只读
+         * 每个 view 只保存按自身尺寸放大后的 path, 见 GlyphPaths
+         */
+        static synchronized List<Segment> shared() {
+            if (sShared == null) {
+                sShared = Collections.unmodifiableList(segments());
+                sSharedBounds = new RectF();
+                computeBounds(sShared, sSharedBounds);
+            }
+            return sShared;
+        }
+
+        /**
+         * 共用灯管范围的并集, 只读, 不能修改返回的对象
+         */
+        static synchronized RectF sharedBounds() {
+            shared();
+            return sSharedBounds;
+        }
+
         //helper
         public static List<Segment> segments() {
             List<Segment> segments = new ArrayList<>();
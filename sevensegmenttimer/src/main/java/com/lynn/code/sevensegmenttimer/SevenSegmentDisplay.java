@@ -0,0 +1,547 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.ColorInt;
+import android.support.v4.os.TraceCompat;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * 单个 view 绘制的 七段数码管 时间显示
+ * <p>
+ * 按格式字符串排列数字和分隔符, 所有内容在一次 onDraw 中绘制, 没有子 view
+ * 格式中连续相同的字母组成一个字段, 字母个数即位数
+ * D : 天  H : 时  M : 分  S : 秒  c : 百分之一秒  m : 毫秒
+ * 分隔符 ':' '.' ' ' '-'
+ * 例如 "HH:MM:SS", "MM:SS.cc", "DDD HH:MM"
+ * <p>
+ * 最高位的字段不取模, 例如 "MM:SS" 显示 90 分钟时为 90:00, 超出位数时显示全 9
+ * 只能在主线程调用
+ */
+
+public class SevenSegmentDisplay extends View {
+    public static final String DEFAULT_PATTERN = "HH:MM:SS";
+
+    private static final int DEFAULT_ON = Color.WHITE;
+    private static final int DEFAULT_OFF = Color.GRAY;
+    private static final int DEFAULT_SEPARATOR = Color.BLACK;
+
+    private static final int TYPE_DIGIT = 0;
+    private static final int TYPE_COLON = 1;
+    private static final int TYPE_DOT = 2;
+    private static final int TYPE_SPACE = 3;
+    private static final int TYPE_MINUS = 4;
+
+    //以一个数字的宽度为 1, 各种格子的相对宽度
+    private static final float DIGIT_GAP_FACTOR = 0.2f;
+    private static final float COLON_WIDTH_FACTOR = 2 / 3f;
+    private static final float DOT_WIDTH_FACTOR = 1 / 3f;
+    private static final float SPACE_WIDTH_FACTOR = 0.5f;
+    //分隔符方块的边长 和 冒号上下偏移, 与 TimeSeparatorView 的比例一致
+    private static final float SEPARATOR_SIDE_FACTOR = 0.2f;
+    private static final float SEPARATOR_INSET_FACTOR = 0.15f;
+
+    private String mPattern;
+    private long mTime;
+
+    //每个格子
+    private int mCellCount;
+    private int[] mCellTypes;
+    private int[] mCellFields;
+    //格子在字段中的位权 1, 10, 100 ...
+    private long[] mCellPlaces;
+    private int[] mCodes;
+    //未放大时的中心位置
+    private float[] mCellUnitCenters;
+    private float[] mCellCenters;
+
+    //每个字段
+    private int mFieldCount;
+    private long[] mFieldUnits;
+    //对上一级字段取模, 最高位的字段为 0 表示不取模
+    private long[] mFieldModulos;
+    private long[] mFieldMaxValues;
+    private int[] mFieldFirstCells;
+    private int[] mFieldLastCells;
+    private RectF[] mFieldRects;
+
+    private float mUnitWidth;
+    private RectF mBound;
+    private GlyphPaths mGlyphPaths;
+
+    private int mOn;
+    private int mOff;
+    private int mSeparatorColor;
+    private int mDigitBackgroundColor;
+    private int mSeparatorBackgroundColor;
+
+    private Paint mPaint;
+    private Rect mDirty;
+
+    //性能统计, 默认不开启
+    private TimerMetrics mMetrics;
+
+    public SevenSegmentDisplay(Context context) {
+        this(context, null);
+    }
+
+    public SevenSegmentDisplay(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SevenSegmentDisplay(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        mPaint.setDither(true);
+        mPaint.setStyle(Paint.Style.FILL);
+
+        mDirty = new Rect();
+
+        mOn = DEFAULT_ON;
+        mOff = DEFAULT_OFF;
+        mSeparatorColor = DEFAULT_SEPARATOR;
+        mDigitBackgroundColor = Color.TRANSPARENT;
+        mSeparatorBackgroundColor = Color.TRANSPARENT;
+
+        //共用进程内的灯管几何, 只保存放大后的 path
+        mBound = SevenSegmentDigitView.Segment.sharedBounds();
+        mGlyphPaths = new GlyphPaths(SevenSegmentDigitView.Segment.shared());
+
+        setPattern(DEFAULT_PATTERN);
+    }
+
+    /**
+     * 设置显示格式, 会重新测量
+     */
+    public void setPattern(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("格式不能为空");
+        }
+        if (pattern.equals(mPattern)) {
+            return;
+        }
+
+        final int length = pattern.length();
+        final int[] types = new int[length];
+        final int[] fields = new int[length];
+        final long[] places = new long[length];
+        final long[] units = new long[length];
+        final int[] firstCells = new int[length];
+        final int[] lastCells = new int[length];
+
+        int fieldCount = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = pattern.charAt(i);
+            final long unit = unitOf(c);
+            if (unit > 0) {
+                types[i] = TYPE_DIGIT;
+                if (i == 0 || pattern.charAt(i - 1) != c) {
+                    //新字段
+                    units[fieldCount] = unit;
+                    firstCells[fieldCount] = i;
+                    fieldCount++;
+                }
+                fields[i] = fieldCount - 1;
+                lastCells[fieldCount - 1] = i;
+                continue;
+            }
+            fields[i] = -1;
+            switch (c) {
+                case ':':
+                    types[i] = TYPE_COLON;
+                    break;
+                case '.':
+                    types[i] = TYPE_DOT;
+                    break;
+                case ' ':
+                    types[i] = TYPE_SPACE;
+                    break;
+                case '-':
+                    types[i] = TYPE_MINUS;
+                    break;
+                default:
+                    throw new IllegalArgumentException("不支持的格式字符 " + c);
+            }
+        }
+
+        final long[] modulos = new long[fieldCount];
+        final long[] maxValues = new long[fieldCount];
+        for (int f = 0; f < fieldCount; f++) {
+            long parentUnit = Long.MAX_VALUE;
+            for (int p = 0; p < fieldCount; p++) {
+                if (units[p] > units[f]) {
+                    parentUnit = Math.min(parentUnit, units[p]);
+                }
+            }
+            modulos[f] = parentUnit == Long.MAX_VALUE ? 0 : parentUnit / units[f];
+
+            long place = 1;
+            for (int i = lastCells[f]; i >= firstCells[f]; i--) {
+                places[i] = place;
+                place *= 10;
+            }
+            maxValues[f] = place - 1;
+        }
+
+        mPattern = pattern;
+        mCellCount = length;
+        mCellTypes = types;
+        mCellFields = fields;
+        mCellPlaces = places;
+        mCodes = new int[length];
+        mCellUnitCenters = new float[length];
+        mCellCenters = new float[length];
+
+        mFieldCount = fieldCount;
+        mFieldUnits = units;
+        mFieldModulos = modulos;
+        mFieldMaxValues = maxValues;
+        mFieldFirstCells = firstCells;
+        mFieldLastCells = lastCells;
+        mFieldRects = new RectF[fieldCount];
+        for (int f = 0; f < fieldCount; f++) {
+            mFieldRects[f] = new RectF();
+        }
+
+        layoutCells();
+        updateGeometry();
+        updateCodes();
+        requestLayout();
+        invalidate();
+    }
+
+    public String getPattern() {
+        return mPattern;
+    }
+
+    private static long unitOf(char c) {
+        switch (c) {
+            case 'D':
+                return 24 * 60 * 60 * 1000L;
+            case 'H':
+                return 60 * 60 * 1000L;
+            case 'M':
+                return 60 * 1000L;
+            case 'S':
+                return 1000L;
+            case 'c':
+                return 10L;
+            case 'm':
+                return 1L;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 格式中最小字段的单位 millis, 即显示的精度
+     */
+    public long getResolution() {
+        long resolution = Long.MAX_VALUE;
+        for (int f = 0; f < mFieldCount; f++) {
+            resolution = Math.min(resolution, mFieldUnits[f]);
+        }
+        return resolution == Long.MAX_VALUE ? 1000L : resolution;
+    }
+
+    /**
+     * 按格式计算每个格子未放大时的位置
+     */
+    private void layoutCells() {
+        final float digitWidth = mBound.width();
+        final float gap = digitWidth * DIGIT_GAP_FACTOR;
+        float x = 0;
+        for (int i = 0; i < mCellCount; i++) {
+            float width;
+            switch (mCellTypes[i]) {
+                case TYPE_DIGIT:
+                    final int field = mCellFields[i];
+                    if (mFieldFirstCells[field] == i) {
+                        //字段两端留出间隔
+                        x += gap;
+                    }
+                    width = digitWidth;
+                    break;
+                case TYPE_COLON:
+                    width = digitWidth * COLON_WIDTH_FACTOR;
+                    break;
+                case TYPE_DOT:
+                    width = digitWidth * DOT_WIDTH_FACTOR;
+                    break;
+                case TYPE_MINUS:
+                    width = digitWidth;
+                    break;
+                case TYPE_SPACE:
+                default:
+                    width = digitWidth * SPACE_WIDTH_FACTOR;
+                    break;
+            }
+            mCellUnitCenters[i] = x + width / 2;
+            x += width;
+            if (mCellTypes[i] == TYPE_DIGIT) {
+                //同一字段的数字之间, 以及字段末尾的间隔
+                x += gap;
+            }
+        }
+        mUnitWidth = x;
+    }
+
+    /**
+     * 设置显示的时间, 按格式分解到各个字段, 只刷新变化的数字
+     */
+    public void setTime(long millis) {
+        mTime = Math.max(0, millis);
+        updateCodes();
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    private void updateCodes() {
+        mDirty.setEmpty();
+        final float scale = mGlyphPaths.getScale();
+        for (int i = 0; i < mCellCount; i++) {
+            final int code;
+            if (mCellTypes[i] == TYPE_DIGIT) {
+                final long value = fieldValue(mCellFields[i]);
+                code = (int) (value / mCellPlaces[i] % 10);
+            } else if (mCellTypes[i] == TYPE_MINUS) {
+                code = Glyph.MINUS;
+            } else {
+                continue;
+            }
+            if (code == mCodes[i]) {
+                continue;
+            }
+            mCodes[i] = code;
+            if (scale > 0) {
+                unionCellRect(i, scale);
+            }
+        }
+        if (!mDirty.isEmpty()) {
+            invalidate(mDirty);
+            if (mMetrics != null) {
+                mMetrics.recordInvalidation();
+            }
+        }
+    }
+
+    private long fieldValue(int field) {
+        long value = mTime / mFieldUnits[field];
+        //最高位的字段不取模, 其余字段对上一级字段取模
+        if (mFieldModulos[field] > 0) {
+            value %= mFieldModulos[field];
+        }
+        return Math.min(value, mFieldMaxValues[field]);
+    }
+
+    private void unionCellRect(int cell, float scale) {
+        final float halfWidth = mBound.width() * scale / 2;
+        final float halfHeight = mBound.height() * scale / 2;
+        final float centerY = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        //多留 2 pixel 给抗锯齿的边缘
+        mDirty.union((int) (mCellCenters[cell] - halfWidth) - 2, (int) (centerY - halfHeight) - 2,
+                (int) (mCellCenters[cell] + halfWidth) + 3, (int) (centerY + halfHeight) + 3);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int desiredWidth = (int) mUnitWidth + getPaddingLeft() + getPaddingRight();
+        final int desiredHeight = (int) mBound.height() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec), resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry();
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        updateGeometry();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+        updateGeometry();
+    }
+
+    /**
+     * 尺寸, padding 或格式变化时, 重新计算放大后的字形和格子位置
+     */
+    private void updateGeometry() {
+        if (mGlyphPaths == null) {
+            //构造过程中 super 可能先调用 setPadding
+            return;
+        }
+        final int w = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int h = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        final float scale = Math.min(w / mUnitWidth, h / mBound.height());
+        mGlyphPaths.setScale(scale);
+
+        //内容居中
+        final float left = getPaddingLeft() + (w - mUnitWidth * scale) / 2;
+        for (int i = 0; i < mCellCount; i++) {
+            mCellCenters[i] = left + mCellUnitCenters[i] * scale;
+        }
+
+        final float gap = mBound.width() * DIGIT_GAP_FACTOR * scale;
+        final float halfDigit = mBound.width() * scale / 2;
+        final float top = getPaddingTop();
+        for (int f = 0; f < mFieldCount; f++) {
+            mFieldRects[f].set(mCellCenters[mFieldFirstCells[f]] - halfDigit - gap, top,
+                    mCellCenters[mFieldLastCells[f]] + halfDigit + gap, top + h);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mMetrics == null) {
+            drawContent(canvas);
+            return;
+        }
+        TraceCompat.beginSection(TimerMetrics.TRACE_DRAW);
+        try {
+            final long start = System.nanoTime();
+            drawContent(canvas);
+            mMetrics.recordDraw(System.nanoTime() - start);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void drawContent(Canvas canvas) {
+        final float scale = mGlyphPaths.getScale();
+        if (scale <= 0) {
+            return;
+        }
+
+        if (Color.alpha(mSeparatorBackgroundColor) != 0) {
+            mPaint.setColor(mSeparatorBackgroundColor);
+            canvas.drawRect(getPaddingLeft(), getPaddingTop(),
+                    getWidth() - getPaddingRight(), getHeight() - getPaddingBottom(), mPaint);
+        }
+        if (Color.alpha(mDigitBackgroundColor) != 0) {
+            mPaint.setColor(mDigitBackgroundColor);
+            for (int f = 0; f < mFieldCount; f++) {
+                canvas.drawRect(mFieldRects[f], mPaint);
+            }
+        }
+
+        final int h = getHeight() - getPaddingTop() - getPaddingBottom();
+        final float centerY = getPaddingTop() + h / 2f;
+        final float side = mBound.width() * SEPARATOR_SIDE_FACTOR * scale;
+        for (int i = 0; i < mCellCount; i++) {
+            final float centerX = mCellCenters[i];
+            switch (mCellTypes[i]) {
+                case TYPE_DIGIT:
+                case TYPE_MINUS:
+                    drawDigit(canvas, centerX, centerY, mCodes[i]);
+                    break;
+                case TYPE_COLON:
+                    mPaint.setColor(mSeparatorColor);
+                    drawSquare(canvas, centerX, centerY - h * SEPARATOR_INSET_FACTOR, side);
+                    drawSquare(canvas, centerX, centerY + h * SEPARATOR_INSET_FACTOR, side);
+                    break;
+                case TYPE_DOT:
+                    mPaint.setColor(mSeparatorColor);
+                    drawSquare(canvas, centerX, centerY + (mBound.height() * scale - side) / 2, side);
+                    break;
+                case TYPE_SPACE:
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 绘制单个数字, 暗的灯管和亮的灯管各一次 drawPath
+     */
+    private void drawDigit(Canvas canvas, float centerX, float centerY, int code) {
+        canvas.save();
+        canvas.translate(centerX, centerY);
+
+        final Path unlit = mGlyphPaths.unlit(code);
+        if (!unlit.isEmpty()) {
+            mPaint.setColor(mOff);
+            canvas.drawPath(unlit, mPaint);
+        }
+
+        final Path lit = mGlyphPaths.lit(code);
+        if (!lit.isEmpty()) {
+            mPaint.setColor(mOn);
+            canvas.drawPath(lit, mPaint);
+        }
+        canvas.restore();
+    }
+
+    private void drawSquare(Canvas canvas, float centerX, float centerY, float side) {
+        canvas.drawRect(centerX - side / 2, centerY - side / 2, centerX + side / 2, centerY + side / 2, mPaint);
+    }
+
+    /**
+     * 开启性能统计, 记录 onDraw 耗时和刷新次数, 为 null 时关闭
+     */
+    public void setMetrics(TimerMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public TimerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 设置亮的颜色
+     */
+    public void setOnRes(@ColorInt int on) {
+        this.mOn = on;
+        invalidate();
+    }
+
+    /**
+     * 设置暗的颜色
+     */
+    public void setOffRes(@ColorInt int off) {
+        this.mOff = off;
+        invalidate();
+    }
+
+    public void setSeparatorColor(@ColorInt int color) {
+        this.mSeparatorColor = color;
+        invalidate();
+    }
+
+    /**
+     * 每个数字字段的背景色
+     */
+    public void setDigitBackgroundColor(@ColorInt int color) {
+        this.mDigitBackgroundColor = color;
+        invalidate();
+    }
+
+    /**
+     * 字段之外区域的背景色
+     */
+    public void setSeparatorBackgroundColor(@ColorInt int color) {
+        this.mSeparatorBackgroundColor = color;
+        invalidate();
+    }
+}
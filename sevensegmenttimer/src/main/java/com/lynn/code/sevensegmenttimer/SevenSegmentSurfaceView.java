@@ -0,0 +1,441 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.ColorInt;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * 在 SurfaceView 上绘制一组 七段数码管 读数, 例如监控屏上同时显示的 100 多个读数
+ * <p>
+ * 与 {@link SevenSegmentDigitView} 使用相同的灯管几何和字形, 但在独立的渲染线程上绘制,
+ * 主线程卡顿不会推迟读数的刷新, 读数的刷新也不占用主线程
+ * 所有读数排成 columns x rows 的网格, 每帧只 lockCanvas 一次, 只锁定并重绘值变化的格子
+ * <p>
+ * {@link #setValue(int, long)} 可以在任意线程调用, 一帧内的多次修改合并为一次绘制
+ * 其他设置只能在主线程调用
+ */
+
+public class SevenSegmentSurfaceView extends SurfaceView {
+    private static final int DEFAULT_COLUMNS = 10;
+    private static final int DEFAULT_ROWS = 10;
+    private static final int DEFAULT_DIGIT_COUNT = 3;
+
+    private static final int DEFAULT_ON = Color.WHITE;
+    private static final int DEFAULT_OFF = Color.DKGRAY;
+    private static final int DEFAULT_BACKGROUND = Color.BLACK;
+
+    //数字之间的间隔 和 格子的留白, 相对一个数字的宽度
+    private static final float DIGIT_GAP_FACTOR = 0.2f;
+    private static final float CELL_PADDING_FACTOR = 0.3f;
+
+    //保护下面由主线程 / 调用线程写入, 渲染线程读取的状态
+    private final Object mLock = new Object();
+    //渲染线程绘制期间持有, surface 销毁时等待当前帧画完
+    private final Object mSurfaceLock = new Object();
+
+    private int mColumns;
+    private int mRows;
+    private int mDigitCount;
+    private boolean mShowLeadingZeros;
+    private long[] mValues;
+    //值变化后等待绘制的格子
+    private boolean[] mDirtyCells;
+    //网格, 尺寸 或颜色变化后全部重绘
+    private boolean mLayoutDirty;
+    private boolean mFramePending;
+    private boolean mSurfaceReady;
+    private int mSurfaceWidth;
+    private int mSurfaceHeight;
+    private int mOn;
+    private int mOff;
+    private int mBackground;
+
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+    private Runnable mPostFrame;
+    private Choreographer.FrameCallback mFrameCallback;
+
+    //以下只在渲染线程使用
+    private final RectF mBound;
+    private final GlyphPaths mGlyphPaths;
+    private final Paint mPaint;
+    private final Rect mDirty;
+    private int mRenderWidth;
+    private int mRenderHeight;
+    private int mRenderDigitCount;
+    private boolean mRenderShowLeadingZeros;
+    private int mRenderOn;
+    private int mRenderOff;
+    private int mRenderBackground;
+    private long[] mRenderValues;
+    private boolean[] mRenderDirty;
+    //每个格子每一位的字形编码, 按格子依次排列
+    private int[] mCodes;
+    private int[] mNewCodes;
+    private Rect[] mCellRects;
+    //每一位相对格子中心的偏移
+    private float[] mDigitOffsets;
+
+    public SevenSegmentSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public SevenSegmentSurfaceView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SevenSegmentSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        mBound = SevenSegmentDigitView.Segment.sharedBounds();
+        mGlyphPaths = new GlyphPaths(SevenSegmentDigitView.Segment.shared());
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        mPaint.setStyle(Paint.Style.FILL);
+        mDirty = new Rect();
+
+        mOn = DEFAULT_ON;
+        mOff = DEFAULT_OFF;
+        mBackground = DEFAULT_BACKGROUND;
+        mShowLeadingZeros = true;
+        setGrid(DEFAULT_COLUMNS, DEFAULT_ROWS, DEFAULT_DIGIT_COUNT);
+
+        mPostFrame = new Runnable() {
+            @Override
+            public void run() {
+                //在渲染线程取得该线程的 Choreographer, 按 vsync 绘制
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            }
+        };
+        mFrameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                render();
+            }
+        };
+
+        getHolder().addCallback(new SurfaceHolder.Callback() {
+            @Override
+            public void surfaceCreated(SurfaceHolder holder) {
+                startRenderThread();
+            }
+
+            @Override
+            public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+                synchronized (mLock) {
+                    mSurfaceWidth = width;
+                    mSurfaceHeight = height;
+                    mSurfaceReady = true;
+                    //新的 surface 没有之前的内容
+                    mLayoutDirty = true;
+                    requestFrameLocked();
+                }
+            }
+
+            @Override
+            public void surfaceDestroyed(SurfaceHolder holder) {
+                //返回后不能再访问 surface, 等待正在绘制的一帧结束
+                synchronized (mSurfaceLock) {
+                    synchronized (mLock) {
+                        mSurfaceReady = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置网格和每个读数的位数, 会清空所有读数
+     *
+     * @param digitCount 1 - {@link SevenSegmentDigitView#MAX_DIGIT_COUNT}
+     */
+    public void setGrid(int columns, int rows, int digitCount) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("行数和列数必须大于0");
+        }
+        if (digitCount < 1 || digitCount > SevenSegmentDigitView.MAX_DIGIT_COUNT) {
+            throw new IllegalArgumentException("位数不在 1 - " + SevenSegmentDigitView.MAX_DIGIT_COUNT + " 之间");
+        }
+        synchronized (mLock) {
+            mColumns = columns;
+            mRows = rows;
+            mDigitCount = digitCount;
+            mValues = new long[columns * rows];
+            mDirtyCells = new boolean[columns * rows];
+            mLayoutDirty = true;
+            requestFrameLocked();
+        }
+    }
+
+    public int getCellCount() {
+        synchronized (mLock) {
+            return mColumns * mRows;
+        }
+    }
+
+    /**
+     * 设置一个读数, 可以在任意线程调用, 值不变时不绘制
+     *
+     * @param index 从左到右, 从上到下
+     */
+    public void setValue(int index, long value) {
+        synchronized (mLock) {
+            if (index < 0 || index >= mValues.length) {
+                throw new IndexOutOfBoundsException("没有第 " + index + " 个读数");
+            }
+            if (mValues[index] == value) {
+                return;
+            }
+            mValues[index] = value;
+            mDirtyCells[index] = true;
+            requestFrameLocked();
+        }
+    }
+
+    public long getValue(int index) {
+        synchronized (mLock) {
+            return mValues[index];
+        }
+    }
+
+    /**
+     * 是否显示高位的 0, 见 {@link SevenSegmentDigitView#setShowLeadingZeros(boolean)}
+     */
+    public void setShowLeadingZeros(boolean show) {
+        synchronized (mLock) {
+            mShowLeadingZeros = show;
+            mLayoutDirty = true;
+            requestFrameLocked();
+        }
+    }
+
+    public void setOnRes(@ColorInt int color) {
+        synchronized (mLock) {
+            mOn = color;
+            mLayoutDirty = true;
+            requestFrameLocked();
+        }
+    }
+
+    public void setOffRes(@ColorInt int color) {
+        synchronized (mLock) {
+            mOff = color;
+            mLayoutDirty = true;
+            requestFrameLocked();
+        }
+    }
+
+    /**
+     * 读数的背景色, SurfaceView 本身不透明, 不使用 view 的背景
+     */
+    public void setDigitBackgroundColor(@ColorInt int color) {
+        synchronized (mLock) {
+            mBackground = color;
+            mLayoutDirty = true;
+            requestFrameLocked();
+        }
+    }
+
+    private void startRenderThread() {
+        synchronized (mLock) {
+            if (mRenderThread != null) {
+                return;
+            }
+            mRenderThread = new HandlerThread("SevenSegmentRender", Process.THREAD_PRIORITY_DISPLAY);
+            mRenderThread.start();
+            mRenderHandler = new Handler(mRenderThread.getLooper());
+            mFramePending = false;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        synchronized (mLock) {
+            if (mRenderThread != null) {
+                //丢弃尚未执行的帧
+                mRenderThread.quit();
+                mRenderThread = null;
+                mRenderHandler = null;
+            }
+            mFramePending = false;
+        }
+    }
+
+    /**
+     * 请求绘制一帧, 已有待绘制的帧时合并, 调用时必须持有 mLock
+     */
+    private void requestFrameLocked() {
+        if (mFramePending || !mSurfaceReady || mRenderHandler == null) {
+            return;
+        }
+        mFramePending = true;
+        mRenderHandler.post(mPostFrame);
+    }
+
+    /**
+     * 在渲染线程绘制一帧
+     * 取出变化的读数, 只有字形真正变化的格子合并到 dirty 区域, 一次 lockCanvas 绘制
+     */
+    private void render() {
+        synchronized (mSurfaceLock) {
+            final boolean fullRedraw;
+            synchronized (mLock) {
+                mFramePending = false;
+                if (!mSurfaceReady) {
+                    return;
+                }
+                fullRedraw = mLayoutDirty;
+                if (fullRedraw) {
+                    updateLayout();
+                    mLayoutDirty = false;
+                }
+                for (int i = 0; i < mValues.length; i++) {
+                    if (mDirtyCells[i]) {
+                        mRenderValues[i] = mValues[i];
+                        mRenderDirty[i] = true;
+                        mDirtyCells[i] = false;
+                    }
+                }
+            }
+
+            if (fullRedraw) {
+                mDirty.set(0, 0, mRenderWidth, mRenderHeight);
+            } else {
+                mDirty.setEmpty();
+            }
+            final int digitCount = mRenderDigitCount;
+            for (int i = 0; i < mRenderValues.length; i++) {
+                if (!fullRedraw && !mRenderDirty[i]) {
+                    continue;
+                }
+                mRenderDirty[i] = false;
+                final int offset = i * digitCount;
+                SevenSegmentDigitView.encode(mRenderValues[i], digitCount, mRenderShowLeadingZeros, mNewCodes, offset);
+                boolean changed = false;
+                for (int d = offset; d < offset + digitCount; d++) {
+                    if (mNewCodes[d] != mCodes[d]) {
+                        mCodes[d] = mNewCodes[d];
+                        changed = true;
+                    }
+                }
+                if (changed && !fullRedraw) {
+                    mDirty.union(mCellRects[i]);
+                }
+            }
+            if (mDirty.isEmpty()) {
+                return;
+            }
+
+            final SurfaceHolder holder = getHolder();
+            //lockCanvas 可能扩大 mDirty, 扩大的部分不保证保留之前的内容
+            final Canvas canvas = holder.lockCanvas(mDirty);
+            if (canvas == null) {
+                //surface 还不能绘制, 下一个 vsync 整体重试, 不等下一次值变化
+                synchronized (mLock) {
+                    mLayoutDirty = true;
+                    if (mSurfaceReady && !mFramePending) {
+                        mFramePending = true;
+                        //当前就在渲染线程, 直接使用该线程的 Choreographer
+                        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+                    }
+                }
+                return;
+            }
+            try {
+                //画布已按 mDirty 裁剪, 与之相交的格子全部重绘
+                canvas.drawColor(mRenderBackground);
+                for (int i = 0; i < mCellRects.length; i++) {
+                    if (Rect.intersects(mCellRects[i], mDirty)) {
+                        drawCell(canvas, i);
+                    }
+                }
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    /**
+     * 按当前的网格和 surface 尺寸重新计算格子的位置和缩放比例, 调用时必须持有 mLock
+     */
+    private void updateLayout() {
+        final int count = mColumns * mRows;
+        if (mRenderValues == null || mRenderValues.length != count || mRenderDigitCount != mDigitCount) {
+            mRenderValues = new long[count];
+            mRenderDirty = new boolean[count];
+            mCodes = new int[count * mDigitCount];
+            mNewCodes = new int[count * mDigitCount];
+            mCellRects = new Rect[count];
+            for (int i = 0; i < count; i++) {
+                mCellRects[i] = new Rect();
+            }
+            mDigitOffsets = new float[mDigitCount];
+        }
+        System.arraycopy(mValues, 0, mRenderValues, 0, count);
+        mRenderWidth = mSurfaceWidth;
+        mRenderHeight = mSurfaceHeight;
+        mRenderDigitCount = mDigitCount;
+        mRenderShowLeadingZeros = mShowLeadingZeros;
+        mRenderOn = mOn;
+        mRenderOff = mOff;
+        mRenderBackground = mBackground;
+
+        for (int i = 0; i < count; i++) {
+            final int column = i % mColumns;
+            final int row = i / mColumns;
+            //按整数 pixel 切分, 相邻格子之间没有缝隙
+            mCellRects[i].set(column * mSurfaceWidth / mColumns, row * mSurfaceHeight / mRows,
+                    (column + 1) * mSurfaceWidth / mColumns, (row + 1) * mSurfaceHeight / mRows);
+        }
+
+        final float cellWidth = (float) mSurfaceWidth / mColumns;
+        final float cellHeight = (float) mSurfaceHeight / mRows;
+        final float units = mDigitCount + DIGIT_GAP_FACTOR * (mDigitCount - 1) + 2 * CELL_PADDING_FACTOR;
+        final float scale = Math.min(cellWidth / (mBound.width() * units),
+                cellHeight / (mBound.height() + 2 * CELL_PADDING_FACTOR * mBound.width()));
+        mGlyphPaths.setScale(scale);
+
+        final float pitch = mBound.width() * scale * (1 + DIGIT_GAP_FACTOR);
+        for (int d = 0; d < mDigitCount; d++) {
+            mDigitOffsets[d] = (d - (mDigitCount - 1) / 2f) * pitch;
+        }
+    }
+
+    /**
+     * 绘制一个格子, 每一位暗的灯管和亮的灯管各一次 drawPath
+     */
+    private void drawCell(Canvas canvas, int index) {
+        final Rect cell = mCellRects[index];
+        final int offset = index * mRenderDigitCount;
+        for (int d = 0; d < mRenderDigitCount; d++) {
+            final int code = mCodes[offset + d];
+            canvas.save();
+            canvas.translate(cell.centerX() + mDigitOffsets[d], cell.centerY());
+
+            final Path unlit = mGlyphPaths.unlit(code);
+            if (!unlit.isEmpty()) {
+                mPaint.setColor(mRenderOff);
+                canvas.drawPath(unlit, mPaint);
+            }
+            final Path lit = mGlyphPaths.lit(code);
+            if (!lit.isEmpty()) {
+                mPaint.setColor(mRenderOn);
+                canvas.drawPath(lit, mPaint);
+            }
+            canvas.restore();
+        }
+    }
+}
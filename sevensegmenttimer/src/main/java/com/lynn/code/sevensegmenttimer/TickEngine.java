@@ -0,0 +1,358 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * 进程内共享的计时驱动
+ * <p>
+ * 所有计时器注册到同一个主线程 Handler 上, 任何时刻最多只有一个待处理的唤醒,
+ * 唤醒时间取所有计时器中最早的那个, 同一时刻到期的计时器在同一次唤醒内依次回调,
+ * 不再为每个计时器创建线程
+ * <p>
+ * 计时器可以在回调中用 {@link #schedule(OnTickListener, long)} 指定下一次唤醒,
+ * 否则按 1秒 的固定节拍回调
+ * <p>
+ * 各计时器的截止时刻相位不同, 每个计时器单独唤醒时每秒会有很多次唤醒和刷新
+ * 唤醒时刻会推迟到 COALESCE_WINDOW (约一帧) 内最晚的那个到期时间, 这一段内到期的计时器在同一次唤醒中回调,
+ * 刷新合并到同一帧; 回调不会早于到期时间, 最多晚 COALESCE_WINDOW,
+ * 这部分会计入 {@link TimerMetrics#getTickLateness()}
+ * <p>
+ * 需要逐帧刷新的计时器 (例如显示百分之一秒) 用 {@link #registerFrameListener(OnFrameListener)},
+ * 同样共用一个 Choreographer 回调, 每帧只 post 一次
+ * <p>
+ * 只能在主线程调用
+ */
+
+public final class TickEngine {
+    private static final long TICK_INTERVAL = 1000;
+    //合并唤醒的窗口, 约 60Hz 下的一帧
+    static final long COALESCE_WINDOW = 16;
+
+    private static TickEngine sInstance;
+
+    private final Handler mHandler;
+    private final Runnable mTick;
+
+    private OnTickListener[] mListeners;
+    //每个计时器下一次回调的时间, uptimeMillis
+    private long[] mDueTimes;
+    private int mCount;
+    //回调过程中有注销, 回调结束后再整理数组
+    private boolean mDispatching;
+    private boolean mNeedsCompact;
+
+    //当前 Handler 中待处理的唤醒时间, 没有时为 Long.MAX_VALUE
+    private long mScheduledTime;
+
+    private final Choreographer.FrameCallback mFrameCallback;
+    private OnFrameListener[] mFrameListeners;
+    private int mFrameCount;
+    private boolean mFrameDispatching;
+    private boolean mFrameNeedsCompact;
+    private boolean mFramePosted;
+    //逐帧回调的耗时, 用于检查是否超出帧预算
+    private long mLastFrameDispatchNanos;
+    private long mMaxFrameDispatchNanos;
+
+    private TickEngine() {
+        mHandler = new Handler(Looper.getMainLooper());
+        mListeners = new OnTickListener[8];
+        mDueTimes = new long[8];
+        mScheduledTime = Long.MAX_VALUE;
+        mTick = new Runnable() {
+            @Override
+            public void run() {
+                mScheduledTime = Long.MAX_VALUE;
+                dispatchTick();
+            }
+        };
+
+        mFrameListeners = new OnFrameListener[4];
+        mFrameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                mFramePosted = false;
+                dispatchFrame(frameTimeNanos);
+            }
+        };
+    }
+
+    public static TickEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new TickEngine();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 注册计时器, 1秒后第一次回调, 重复注册无效
+     */
+    public void register(OnTickListener listener) {
+        if (indexOf(listener) >= 0) {
+            return;
+        }
+        schedule(listener, TICK_INTERVAL);
+    }
+
+    /**
+     * 指定计时器下一次回调的时间, 未注册时先注册
+     *
+     * @param delayMillis 距离现在的毫秒数
+     */
+    public void schedule(OnTickListener listener, long delayMillis) {
+        final long dueTime = SystemClock.uptimeMillis() + Math.max(0, delayMillis);
+        int index = indexOf(listener);
+        if (index < 0) {
+            index = add(listener);
+        }
+        mDueTimes[index] = dueTime;
+
+        if (!mDispatching) {
+            //回调过程中的调整, 回调结束后统一处理
+            scheduleWakeUp();
+        }
+    }
+
+    /**
+     * 注销计时器, 没有计时器时停止唤醒
+     */
+    public void unregister(OnTickListener listener) {
+        final int index = indexOf(listener);
+        if (index < 0) {
+            return;
+        }
+        if (mDispatching) {
+            //正在回调, 先置空
+            mListeners[index] = null;
+            mNeedsCompact = true;
+            return;
+        }
+        System.arraycopy(mListeners, index + 1, mListeners, index, mCount - index - 1);
+        System.arraycopy(mDueTimes, index + 1, mDueTimes, index, mCount - index - 1);
+        mListeners[--mCount] = null;
+
+        if (mCount == 0) {
+            mHandler.removeCallbacks(mTick);
+            mScheduledTime = Long.MAX_VALUE;
+        }
+    }
+
+    public boolean isRegistered(OnTickListener listener) {
+        return indexOf(listener) >= 0;
+    }
+
+    private int add(OnTickListener listener) {
+        if (mCount == mListeners.length) {
+            final OnTickListener[] listeners = new OnTickListener[mCount * 2];
+            System.arraycopy(mListeners, 0, listeners, 0, mCount);
+            mListeners = listeners;
+            final long[] dueTimes = new long[mCount * 2];
+            System.arraycopy(mDueTimes, 0, dueTimes, 0, mCount);
+            mDueTimes = dueTimes;
+        }
+        mListeners[mCount] = listener;
+        return mCount++;
+    }
+
+    private int indexOf(OnTickListener listener) {
+        for (int i = 0; i < mCount; i++) {
+            if (mListeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按最早的到期时间安排唤醒, 推迟到 COALESCE_WINDOW 内最晚的到期时间, 一起回调
+     * 待处理的唤醒已经在这个范围内时不重新 post
+     */
+    private void scheduleWakeUp() {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < mCount; i++) {
+            earliest = Math.min(earliest, mDueTimes[i]);
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return;
+        }
+        final long limit = earliest + COALESCE_WINDOW;
+        if (mScheduledTime >= earliest && mScheduledTime <= limit) {
+            return;
+        }
+        long time = earliest;
+        for (int i = 0; i < mCount; i++) {
+            if (mDueTimes[i] <= limit) {
+                time = Math.max(time, mDueTimes[i]);
+            }
+        }
+        mHandler.removeCallbacks(mTick);
+        mScheduledTime = time;
+        mHandler.postAtTime(mTick, time);
+    }
+
+    private void dispatchTick() {
+        final long now = SystemClock.uptimeMillis();
+
+        mDispatching = true;
+        //回调中新注册的计时器 等下一次再回调
+        final int count = mCount;
+        for (int i = 0; i < count; i++) {
+            final OnTickListener listener = mListeners[i];
+            if (listener == null || mDueTimes[i] > now) {
+                continue;
+            }
+            //默认按固定节拍推进, 被延迟时跳过错过的节拍, 不补发
+            long next = mDueTimes[i];
+            do {
+                next += TICK_INTERVAL;
+            } while (next <= now);
+            mDueTimes[i] = next;
+            //回调中可以用 schedule 覆盖
+            listener.onTick(now);
+        }
+        mDispatching = false;
+
+        if (mNeedsCompact) {
+            compact();
+        }
+
+        scheduleWakeUp();
+    }
+
+    /**
+     * 注册逐帧回调, 重复注册无效
+     */
+    public void registerFrameListener(OnFrameListener listener) {
+        for (int i = 0; i < mFrameCount; i++) {
+            if (mFrameListeners[i] == listener) {
+                return;
+            }
+        }
+        if (mFrameCount == mFrameListeners.length) {
+            final OnFrameListener[] listeners = new OnFrameListener[mFrameCount * 2];
+            System.arraycopy(mFrameListeners, 0, listeners, 0, mFrameCount);
+            mFrameListeners = listeners;
+        }
+        mFrameListeners[mFrameCount++] = listener;
+
+        if (!mFramePosted) {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * 注销逐帧回调, 没有回调时不再 post
+     */
+    public void unregisterFrameListener(OnFrameListener listener) {
+        for (int i = 0; i < mFrameCount; i++) {
+            if (mFrameListeners[i] != listener) {
+                continue;
+            }
+            if (mFrameDispatching) {
+                mFrameListeners[i] = null;
+                mFrameNeedsCompact = true;
+                return;
+            }
+            System.arraycopy(mFrameListeners, i + 1, mFrameListeners, i, mFrameCount - i - 1);
+            mFrameListeners[--mFrameCount] = null;
+            if (mFrameCount == 0 && mFramePosted) {
+                mFramePosted = false;
+                Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            }
+            return;
+        }
+    }
+
+    private void dispatchFrame(long frameTimeNanos) {
+        final long start = System.nanoTime();
+
+        mFrameDispatching = true;
+        final int count = mFrameCount;
+        for (int i = 0; i < count; i++) {
+            final OnFrameListener listener = mFrameListeners[i];
+            if (listener != null) {
+                listener.onFrame(frameTimeNanos);
+            }
+        }
+        mFrameDispatching = false;
+
+        if (mFrameNeedsCompact) {
+            int compacted = 0;
+            for (int i = 0; i < mFrameCount; i++) {
+                if (mFrameListeners[i] != null) {
+                    mFrameListeners[compacted++] = mFrameListeners[i];
+                }
+            }
+            for (int i = compacted; i < mFrameCount; i++) {
+                mFrameListeners[i] = null;
+            }
+            mFrameCount = compacted;
+            mFrameNeedsCompact = false;
+        }
+
+        if (mFrameCount > 0 && !mFramePosted) {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+
+        mLastFrameDispatchNanos = System.nanoTime() - start;
+        mMaxFrameDispatchNanos = Math.max(mMaxFrameDispatchNanos, mLastFrameDispatchNanos);
+    }
+
+    /**
+     * 最近一帧所有逐帧回调的总耗时 ns
+     */
+    public long getLastFrameDispatchNanos() {
+        return mLastFrameDispatchNanos;
+    }
+
+    /**
+     * 逐帧回调的最大耗时 ns, 可与帧间隔 (例如 120Hz 下约 8.3ms) 比较
+     */
+    public long getMaxFrameDispatchNanos() {
+        return mMaxFrameDispatchNanos;
+    }
+
+    public void resetFrameDispatchNanos() {
+        mLastFrameDispatchNanos = 0;
+        mMaxFrameDispatchNanos = 0;
+    }
+
+    private void compact() {
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mListeners[i] != null) {
+                mListeners[count] = mListeners[i];
+                mDueTimes[count] = mDueTimes[i];
+                count++;
+            }
+        }
+        for (int i = count; i < mCount; i++) {
+            mListeners[i] = null;
+        }
+        mCount = count;
+        mNeedsCompact = false;
+    }
+
+    public interface OnTickListener {
+        /**
+         * 在主线程回调
+         *
+         * @param uptimeMillis 本次唤醒的时间, {@link SystemClock#uptimeMillis()}
+         */
+        void onTick(long uptimeMillis);
+    }
+
+    public interface OnFrameListener {
+        /**
+         * 每个显示帧在主线程回调一次, 实现中不应分配对象
+         *
+         * @param frameTimeNanos {@link Choreographer.FrameCallback#doFrame(long)} 的帧时间
+         */
+        void onFrame(long frameTimeNanos);
+    }
+}
@@ -33,6 +33,15 @@ public class TimeSeparatorView extends View {
 
     private int mSeparatorColor;
 
+    //闪烁的间隔, 每个间隔切换一次 亮 / 灭, 0 表示不闪烁
+    private long mBlinkInterval;
+    //闪烁的相位起点, CountDownDigitTimer.CLOCK 的时间, 起点处为亮
+    private long mBlinkOrigin;
+    //当前是否绘制分隔符
+    private boolean mBlinkOn;
+    private boolean mIsAttached;
+    private TickEngine.OnTickListener mBlinkTask;
+
     public TimeSeparatorView(Context context) {
         this(context, null);
     }
@@ -60,10 +69,22 @@ public class TimeSeparatorView extends View {
         mPaint.setAntiAlias(true);
         mPaint.setStyle(Paint.Style.FILL_AND_STROKE);
 //        mPaint.setColor(DEFAULT_COLOR);
+
+        mBlinkOn = true;
+        mBlinkTask = new TickEngine.OnTickListener() {
+            @Override
+            public void onTick(long uptimeMillis) {
+                updateBlink();
+            }
+        };
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        if (!mBlinkOn) {
+            //闪烁中灭的半周期, 只保留背景
+            return;
+        }
         mPaint.setColor(mSeparatorColor);
         //移动到画布中心
         canvas.translate(canvas.getWidth() / 2, canvas.getHeight() / 2);
@@ -112,6 +133,94 @@ public class TimeSeparatorView extends View {
         mSeparatorColor = color;
     }
 
+    /**
+     * 设置闪烁, 例如 500 即每秒亮灭一次, 0 表示常亮
+     * 由共享的 {@link TickEngine} 在每次切换时唤醒, 切换时只重绘分隔符自身, 不分配对象, 不重新布局
+     * 未 attach 或不可见时不唤醒
+     */
+    public void setBlinkInterval(long intervalMillis) {
+        intervalMillis = Math.max(0, intervalMillis);
+        if (intervalMillis == mBlinkInterval) {
+            return;
+        }
+        mBlinkInterval = intervalMillis;
+        updateBlink();
+    }
+
+    public long getBlinkInterval() {
+        return mBlinkInterval;
+    }
+
+    /**
+     * 设置闪烁的相位, 在 originMillis 以及之后每两个间隔处变亮
+     * 例如倒计时传入截止时刻, 分隔符与数字的跳变同时变亮
+     *
+     * @param originMillis {@link CountDownDigitTimer#CLOCK} 的时间
+     */
+    public void setBlinkOrigin(long originMillis) {
+        if (originMillis == mBlinkOrigin) {
+            return;
+        }
+        mBlinkOrigin = originMillis;
+        updateBlink();
+    }
+
+    /**
+     * 按当前时间计算亮灭, 并安排下一次切换
+     * 自己或任一父 view 不可见 (例如部分显示时隐藏的分隔符) 时不唤醒
+     */
+    private void updateBlink() {
+        final TickEngine engine = TickEngine.getInstance();
+        if (mBlinkInterval == 0 || !mIsAttached || getWindowVisibility() != View.VISIBLE || !isShown()) {
+            engine.unregister(mBlinkTask);
+            setBlinkOn(true);
+            return;
+        }
+        final long elapsed = CountDownDigitTimer.CLOCK.millis() - mBlinkOrigin;
+        //起点之前的时间同样按间隔向下取整
+        final long offset = ((elapsed % mBlinkInterval) + mBlinkInterval) % mBlinkInterval;
+        final long step = (elapsed - offset) / mBlinkInterval;
+        setBlinkOn((step & 1) == 0);
+        engine.schedule(mBlinkTask, mBlinkInterval - offset);
+    }
+
+    private void setBlinkOn(boolean on) {
+        if (on == mBlinkOn) {
+            return;
+        }
+        mBlinkOn = on;
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mIsAttached = true;
+        updateBlink();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mIsAttached = false;
+        updateBlink();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateBlink();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        //自己或父 view 的可见性变化, 构造过程中也可能调用
+        if (mIsAttached) {
+            updateBlink();
+        }
+    }
+
     @IntDef(value = {CIRCLE, SQUARE})
     @Retention(RetentionPolicy.SOURCE)
     public @interface SeparatorStyle {
@@ -0,0 +1,269 @@
+package com.lynn.code.sevensegmenttimer;
+
+import android.os.SystemClock;
+
+/**
+ * 计时器的性能统计, 默认不开启, 见 {@link CountDownDigitTimer#setMetrics(TimerMetrics)}
+ * <p>
+ * 统计 唤醒相对预定时刻的延迟, onDraw 耗时, 每秒刷新次数, 以及被跳过 / 合并的唤醒
+ * 数值记录在固定大小的直方图中, 记录时不分配对象
+ * 可以注册 {@link OnMetricsListener} 每个统计周期回调一次, 或随时用 {@link #copyTo(TimerMetrics)} 取快照
+ * <p>
+ * 开启后各阶段同时输出 systrace 区段, 见 TRACE_ 开头的常量
+ * 只能在主线程调用
+ */
+
+public final class TimerMetrics {
+    public static final String TRACE_TICK = "SevenSegment:tick";
+    public static final String TRACE_FRAME = "SevenSegment:frame";
+    public static final String TRACE_DRAW = "SevenSegment:draw";
+
+    private static final long DEFAULT_REPORT_INTERVAL = 1000;
+
+    //唤醒延迟 millis
+    private final Histogram mTickLateness;
+    //onDraw 耗时 microseconds
+    private final Histogram mDrawTime;
+
+    private long mTickCount;
+    //显示的数字跳过的次数, 例如 12 直接变成 10, 跳过了 11
+    private long mMissedTicks;
+    //因为唤醒太晚, 一次回调覆盖了多次跳变的次数
+    private long mCoalescedTicks;
+    private long mInvalidationCount;
+    private long mDrawCount;
+
+    //统计周期
+    private long mReportInterval;
+    private long mWindowStart;
+    private int mWindowInvalidations;
+    private float mInvalidationsPerSecond;
+
+    private OnMetricsListener mListener;
+
+    public TimerMetrics() {
+        mTickLateness = new Histogram();
+        mDrawTime = new Histogram();
+        mReportInterval = DEFAULT_REPORT_INTERVAL;
+        mWindowStart = -1;
+    }
+
+    /**
+     * 记录一次唤醒
+     *
+     * @param latenessMillis 实际唤醒时刻 减去 预定时刻
+     * @param skippedSteps   本次回调时显示的数字跳过了几步, 按时唤醒时为 0
+     */
+    void recordTick(long latenessMillis, long skippedSteps) {
+        mTickLateness.record(Math.max(0, latenessMillis));
+        mTickCount++;
+        if (skippedSteps > 0) {
+            mMissedTicks += skippedSteps;
+            mCoalescedTicks++;
+        }
+        checkWindow();
+    }
+
+    void recordDraw(long durationNanos) {
+        mDrawTime.record(durationNanos / 1000);
+        mDrawCount++;
+        checkWindow();
+    }
+
+    void recordInvalidation() {
+        mInvalidationCount++;
+        mWindowInvalidations++;
+        checkWindow();
+    }
+
+    /**
+     * 每个统计周期结束时 计算每秒刷新次数 并回调
+     */
+    private void checkWindow() {
+        final long now = SystemClock.uptimeMillis();
+        if (mWindowStart < 0) {
+            mWindowStart = now;
+            return;
+        }
+        final long elapsed = now - mWindowStart;
+        if (elapsed < mReportInterval) {
+            return;
+        }
+        mInvalidationsPerSecond = mWindowInvalidations * 1000f / elapsed;
+        mWindowInvalidations = 0;
+        mWindowStart = now;
+        if (mListener != null) {
+            mListener.onMetrics(this);
+        }
+    }
+
+    /**
+     * 唤醒延迟的分布, 单位 millis
+     * 包括 {@link TickEngine} 合并唤醒带来的延迟, 最多 {@link TickEngine#COALESCE_WINDOW}
+     */
+    public Histogram getTickLateness() {
+        return mTickLateness;
+    }
+
+    /**
+     * onDraw 耗时的分布, 单位 microseconds
+     */
+    public Histogram getDrawTime() {
+        return mDrawTime;
+    }
+
+    public long getTickCount() {
+        return mTickCount;
+    }
+
+    public long getMissedTicks() {
+        return mMissedTicks;
+    }
+
+    public long getCoalescedTicks() {
+        return mCoalescedTicks;
+    }
+
+    public long getInvalidationCount() {
+        return mInvalidationCount;
+    }
+
+    public long getDrawCount() {
+        return mDrawCount;
+    }
+
+    /**
+     * 最近一个统计周期的每秒刷新次数
+     */
+    public float getInvalidationsPerSecond() {
+        return mInvalidationsPerSecond;
+    }
+
+    /**
+     * 设置统计周期, 默认 1秒
+     */
+    public void setReportInterval(long intervalMillis) {
+        mReportInterval = Math.max(1, intervalMillis);
+    }
+
+    public void setOnMetricsListener(OnMetricsListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 复制当前的统计到调用者提供的对象, 不分配对象
+     */
+    public void copyTo(TimerMetrics out) {
+        mTickLateness.copyTo(out.mTickLateness);
+        mDrawTime.copyTo(out.mDrawTime);
+        out.mTickCount = mTickCount;
+        out.mMissedTicks = mMissedTicks;
+        out.mCoalescedTicks = mCoalescedTicks;
+        out.mInvalidationCount = mInvalidationCount;
+        out.mDrawCount = mDrawCount;
+        out.mInvalidationsPerSecond = mInvalidationsPerSecond;
+    }
+
+    public void reset() {
+        mTickLateness.reset();
+        mDrawTime.reset();
+        mTickCount = 0;
+        mMissedTicks = 0;
+        mCoalescedTicks = 0;
+        mInvalidationCount = 0;
+        mDrawCount = 0;
+        mWindowStart = -1;
+        mWindowInvalidations = 0;
+        mInvalidationsPerSecond = 0;
+    }
+
+    /**
+     * 按 2 的幂分桶的直方图
+     * 第 0 个桶只有 0, 第 i 个桶为 [2^(i-1), 2^i), 最后一个桶包括所有更大的值
+     */
+    public static final class Histogram {
+        public static final int BUCKET_COUNT = 24;
+
+        private final long[] mCounts = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mSum;
+        private long mMax;
+
+        void record(long value) {
+            final int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+            mCounts[bucket]++;
+            mCount++;
+            mSum += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public float getMean() {
+            return mCount == 0 ? 0 : (float) mSum / mCount;
+        }
+
+        public long getBucketCount(int bucket) {
+            return mCounts[bucket];
+        }
+
+        /**
+         * 第 bucket 个桶包含的最大值, 最后一个桶为 Long.MAX_VALUE
+         */
+        public static long getBucketUpperBound(int bucket) {
+            if (bucket >= BUCKET_COUNT - 1) {
+                return Long.MAX_VALUE;
+            }
+            return (1L << bucket) - 1;
+        }
+
+        /**
+         * 近似的百分位数, 返回所在桶的上界, 不超过最大值
+         *
+         * @param percentile 0 ~ 100
+         */
+        public long getPercentile(float percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            final long target = (long) Math.ceil(mCount * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mCounts[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(getBucketUpperBound(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        void copyTo(Histogram out) {
+            System.arraycopy(mCounts, 0, out.mCounts, 0, BUCKET_COUNT);
+            out.mCount = mCount;
+            out.mSum = mSum;
+            out.mMax = mMax;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mCounts[i] = 0;
+            }
+            mCount = 0;
+            mSum = 0;
+            mMax = 0;
+        }
+    }
+
+    public interface OnMetricsListener {
+        /**
+         * 每个统计周期在主线程回调一次, 需要保存时用 {@link TimerMetrics#copyTo(TimerMetrics)}
+         */
+        void onMetrics(TimerMetrics metrics);
+    }
+}